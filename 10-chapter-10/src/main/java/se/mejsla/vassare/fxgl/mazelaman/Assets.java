@@ -0,0 +1,248 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.logging.Logger;
+import com.almasb.fxgl.texture.Texture;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Caches images and level data, and preloads everything listed in assets/manifest.txt on a worker pool.
+ * All sprites are packed into one atlas image by {@link se.mejsla.vassare.fxgl.mazelaman.tools.AtlasPacker},
+ * and a sprite is drawn by showing its region of the atlas.
+ * Images are decoded on the worker threads. Sounds are read on the worker threads to get them into the file cache,
+ * and then handed to FXGL on the FX thread, since the FXGL asset loader is not thread safe.
+ */
+public final class Assets {
+
+    private static final Logger LOG = Logger.get(Assets.class);
+
+    private static final String ASSETS_DIR = "/assets/";
+    private static final String MANIFEST = "manifest.txt";
+    private static final String ATLAS_IMAGE = "atlas.png";
+    private static final String ATLAS_INDEX = "atlas.txt";
+
+    private static final Map<String, Image> IMAGES = new ConcurrentHashMap<>();
+    private static final Map<String, LevelData> LEVELS = new ConcurrentHashMap<>();
+
+    // The atlas is kept outside of IMAGES, since the other images are copied from it while IMAGES is being updated
+    private static volatile Image atlas;
+    private static volatile Map<String, Rectangle2D> atlasIndex;
+
+    private Assets() {
+    }
+
+    /**
+     * Returns the image {@code name} from the textures directory, loading it if it has not been preloaded.
+     * Sprites in the atlas are copied out of the atlas image.
+     */
+    public static Image image(String name) {
+        if (ATLAS_IMAGE.equals(name)) {
+            return atlas();
+        }
+        return IMAGES.computeIfAbsent(name, Assets::loadImage);
+    }
+
+    /**
+     * Returns the image {@code name} from the levels directory, like a tileset image.
+     */
+    public static Image levelImage(String name) {
+        return IMAGES.computeIfAbsent("levels/" + name, Assets::loadFile);
+    }
+
+    /**
+     * Returns a texture that shows sprite {@code name} from the atlas. All sprites share the same atlas image,
+     * so switching sprite is just a matter of changing the viewport with {@link #region(String)}.
+     */
+    public static Texture sprite(String name) {
+        Texture texture = new Texture(atlas());
+        texture.setViewport(region(name));
+        return texture;
+    }
+
+    /**
+     * Returns the region of sprite {@code name} in the atlas.
+     */
+    public static Rectangle2D region(String name) {
+        Rectangle2D region = atlasIndex().get(name);
+        if (region == null) {
+            throw new IllegalArgumentException("Sprite not in atlas: " + name);
+        }
+        return region;
+    }
+
+    /**
+     * Returns the level data for level {@code fileName}, parsing it if it has not been preloaded.
+     */
+    public static LevelData level(String fileName) {
+        return LEVELS.computeIfAbsent(fileName, LevelData::load);
+    }
+
+    /**
+     * Replaces the cached level data of a level, so that the level is loaded from {@code levelData} from now on.
+     */
+    public static void replaceLevel(LevelData levelData) {
+        LEVELS.put(levelData.getName(), levelData);
+    }
+
+    /**
+     * Starts loading all assets in the manifest in the background.
+     */
+    public static CompletableFuture<Void> preload() {
+        List<String> entries = readManifest();
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "asset-preloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        CompletableFuture<?>[] futures = entries.stream()
+                .map(entry -> CompletableFuture.runAsync(() -> preload(entry), pool))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures).whenComplete((result, error) -> {
+            pool.shutdown();
+            if (error != null) {
+                LOG.warning("Failed to preload assets: " + error);
+            } else {
+                LOG.info(String.format("Preloaded %d assets in %.2f ms", entries.size(), millisSince(start)));
+            }
+        });
+    }
+
+    private static void preload(String entry) {
+        long start = System.nanoTime();
+        if (entry.equals("textures/" + ATLAS_INDEX)) {
+            atlasIndex();
+        } else if (entry.startsWith("textures/")) {
+            image(entry.substring("textures/".length()));
+        } else if (entry.startsWith("levels/") && entry.endsWith(".tmx")) {
+            level(entry.substring("levels/".length()));
+        } else if (entry.startsWith("levels/") && entry.endsWith(".png")) {
+            levelImage(entry.substring("levels/".length()));
+        } else if (entry.startsWith("sounds/")) {
+            readBytes(entry);
+            String name = entry.substring("sounds/".length());
+            Platform.runLater(() -> FXGL.getAssetLoader().loadSound(name));
+        } else {
+            // Other files are loaded by FXGL itself, but reading them now still saves the disk access
+            readBytes(entry);
+        }
+        LOG.info(String.format("Preloaded %s in %.2f ms", entry, millisSince(start)));
+    }
+
+    private static Image loadImage(String name) {
+        Rectangle2D region = atlasIndex().get(name);
+        if (region != null) {
+            return new WritableImage(atlas().getPixelReader(),
+                    (int) region.getMinX(), (int) region.getMinY(), (int) region.getWidth(), (int) region.getHeight());
+        }
+        return loadFile("textures/" + name);
+    }
+
+    private static Image loadFile(String entry) {
+        URL url = Assets.class.getResource(ASSETS_DIR + entry);
+        if (url == null) {
+            throw new IllegalArgumentException("Image not found: " + entry);
+        }
+        Image image = new Image(url.toExternalForm());
+        if (image.isError()) {
+            throw new IllegalArgumentException("Failed to load image: " + entry, image.getException());
+        }
+        return image;
+    }
+
+    private static Image atlas() {
+        Image image = atlas;
+        if (image == null) {
+            synchronized (Assets.class) {
+                image = atlas;
+                if (image == null) {
+                    image = loadFile("textures/" + ATLAS_IMAGE);
+                    atlas = image;
+                }
+            }
+        }
+        return image;
+    }
+
+    private static Map<String, Rectangle2D> atlasIndex() {
+        Map<String, Rectangle2D> index = atlasIndex;
+        if (index == null) {
+            synchronized (Assets.class) {
+                index = atlasIndex;
+                if (index == null) {
+                    index = readAtlasIndex();
+                    atlasIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static Map<String, Rectangle2D> readAtlasIndex() {
+        Map<String, Rectangle2D> index = new HashMap<>();
+        for (String line : readLines("textures/" + ATLAS_INDEX)) {
+            String[] fields = line.split("\\s+");
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("Invalid atlas index line: " + line);
+            }
+            index.put(fields[0], new Rectangle2D(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                    Double.parseDouble(fields[3]), Double.parseDouble(fields[4])));
+        }
+        return Map.copyOf(index);
+    }
+
+    private static List<String> readManifest() {
+        return readLines(MANIFEST);
+    }
+
+    private static List<String> readLines(String entry) {
+        try (InputStream in = Assets.class.getResourceAsStream(ASSETS_DIR + entry)) {
+            if (in == null) {
+                return List.of();
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return reader.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read asset: " + entry, e);
+        }
+    }
+
+    private static void readBytes(String entry) {
+        try (InputStream in = Assets.class.getResourceAsStream(ASSETS_DIR + entry)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Asset not found: " + entry);
+            }
+            in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read asset: " + entry, e);
+        }
+    }
+
+    private static double millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+}
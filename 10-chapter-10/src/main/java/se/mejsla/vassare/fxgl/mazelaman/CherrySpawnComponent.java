@@ -1,28 +1,33 @@
 package se.mejsla.vassare.fxgl.mazelaman;
 
 import com.almasb.fxgl.dsl.FXGL;
-import com.almasb.fxgl.entity.Entity;
 import com.almasb.fxgl.entity.SpawnData;
 import com.almasb.fxgl.entity.component.Component;
-import javafx.util.Duration;
-
-import java.util.Random;
 
 public class CherrySpawnComponent extends Component {
 
-    private static final Random RANDOM = new Random();
+    // A cherry spawns about once every 1000 frames, so there is no need to check every frame
+    private static final TickRate RATE = TickRate.everyFrames(15);
+
+    private final TickScheduler.Ticker ticker = this::tick;
 
     @Override
-    public void onUpdate(double tpf) {
-        // Spawn a cherry randomly if there is not a cherry already
-        if (RANDOM.nextInt(1000) == 0 && noCherryAt(entity.getX(), entity.getY())) {
-            Entity cherry = FXGL.spawn("Cherry", new SpawnData(entity.getX(), entity.getY()));
-            despawnLater(cherry);
-        }
+    public void onAdded() {
+        FXGL.<MazelaManApp>getAppCast().getTicks().register(RATE, ticker);
     }
 
-    private void despawnLater(Entity cherry) {
-        FXGL.getGameTimer().runOnceAfter(cherry::removeFromWorld, Duration.seconds(10));
+    @Override
+    public void onRemoved() {
+        FXGL.<MazelaManApp>getAppCast().getTicks().unregister(ticker);
+    }
+
+    private void tick(int frames, double seconds) {
+        // Spawn a cherry randomly if there is not a cherry already, with the same odds per frame as before
+        MazelaManApp app = FXGL.getAppCast();
+        if (app.getRandom().nextInt(1000) < frames && noCherryAt(entity.getX(), entity.getY())) {
+            // The cherry despawns by itself after a while
+            app.getSpawnTemplates().spawn("Cherry", new SpawnData(entity.getX(), entity.getY()));
+        }
     }
 
     private boolean noCherryAt(double x, double y) {
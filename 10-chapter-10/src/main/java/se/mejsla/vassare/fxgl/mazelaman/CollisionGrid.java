@@ -0,0 +1,87 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.entity.Entity;
+import javafx.geometry.Point2D;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Finds the entities that a player collides with, by only looking at entities in the tiles around the player.
+ * Entities are added by {@link GridCollidableComponent}, and moving entities must report when they have moved.
+ * Like a collision handler, the callback is only called when a collision begins.
+ */
+public final class CollisionGrid {
+
+    private static final double TILE_SIZE = 20.0;
+    private static final int BUCKET_COUNT = 1024;
+
+    private final SpatialHash<Entity> hash = new SpatialHash<>(TILE_SIZE, BUCKET_COUNT);
+    private final List<Entity> candidates = new ArrayList<>();
+    private final List<Entity> begun = new ArrayList<>();
+    private final Map<Entity, Set<Entity>> touchingByPlayer = new HashMap<>();
+    private Set<Entity> stillTouching = new HashSet<>();
+
+    public void add(Entity entity) {
+        moved(entity);
+    }
+
+    public void moved(Entity entity) {
+        Point2D center = entity.getCenter();
+        hash.update(entity, center.getX(), center.getY());
+    }
+
+    public void remove(Entity entity) {
+        hash.remove(entity);
+        for (Set<Entity> touching : touchingByPlayer.values()) {
+            touching.remove(entity);
+        }
+    }
+
+    public void clear() {
+        hash.clear();
+        touchingByPlayer.clear();
+    }
+
+    public int size() {
+        return hash.size();
+    }
+
+    public void check(Entity player, BiConsumer<Entity, Entity> onCollisionBegin) {
+        // Forget players that have left the world, there are at most a couple of them
+        touchingByPlayer.keySet().removeIf(entity -> !entity.isActive());
+        Set<Entity> touching = touchingByPlayer.computeIfAbsent(player, key -> new HashSet<>());
+
+        Point2D center = player.getCenter();
+        hash.query(center.getX(), center.getY(), candidates);
+        for (Entity candidate : candidates) {
+            if (player.isColliding(candidate)) {
+                stillTouching.add(candidate);
+                if (!touching.contains(candidate)) {
+                    begun.add(candidate);
+                }
+            }
+        }
+        candidates.clear();
+
+        touchingByPlayer.put(player, stillTouching);
+        touching.clear();
+        stillTouching = touching;
+
+        // The callbacks may remove entities, including the player, so they are called after the query
+        for (Entity entity : begun) {
+            if (!player.isActive()) {
+                break;
+            }
+            if (entity.isActive()) {
+                onCollisionBegin.accept(player, entity);
+            }
+        }
+        begun.clear();
+    }
+}
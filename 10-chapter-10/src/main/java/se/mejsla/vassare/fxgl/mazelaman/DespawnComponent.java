@@ -0,0 +1,33 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.entity.component.Component;
+
+/**
+ * Removes the entity after a number of seconds of game time. Unlike a game timer, the countdown goes away
+ * together with the entity, so nothing is left pending when the level changes or the game ends.
+ * The countdown is advanced by the app in game steps, so it follows the time scale.
+ */
+public class DespawnComponent extends Component {
+
+    private final double seconds;
+    private double age;
+
+    public DespawnComponent(double seconds) {
+        this.seconds = seconds;
+    }
+
+    public void step(double tpf) {
+        age += tpf;
+        if (age >= seconds) {
+            entity.removeFromWorld();
+        }
+    }
+
+    public double getTimeLeft() {
+        return seconds - age;
+    }
+
+    public void setTimeLeft(double timeLeft) {
+        age = seconds - timeLeft;
+    }
+}
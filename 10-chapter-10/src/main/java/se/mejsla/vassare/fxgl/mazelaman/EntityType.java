@@ -5,5 +5,7 @@ public enum EntityType {
     GHOST,
     PILL,
     PLAYER,
+    POWER_PILL,
+    TILE_LAYER,
     WALL
 }
@@ -1,86 +1,129 @@
 package se.mejsla.vassare.fxgl.mazelaman;
 
 import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.Entity;
 import com.almasb.fxgl.entity.SpawnData;
 import com.almasb.fxgl.entity.component.Component;
 import com.almasb.fxgl.texture.Texture;
-
-import java.util.Random;
+import javafx.geometry.Rectangle2D;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Direction;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GhostModeScheduler;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GhostMotion;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GhostTargeting;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Maze;
 
 public class GhostComponent extends Component {
 
     private static final double SPEED = 100.0;
-    private static final Random RANDOM = new Random();
 
     private final String name;
-    private final double x;
-    private final double y;
+    private double x;
+    private double y;
 
-    private final Texture left;
-    private final Texture right;
-    private final Texture upDown;
+    private final Rectangle2D left;
+    private final Rectangle2D right;
+    private final Rectangle2D upDown;
+    private final Texture texture;
 
-    private double dx = 0.0;
-    private double dy = -SPEED;
+    private final GhostMotion motion;
 
     public GhostComponent(String name, double x, double y) {
         this.name = name;
         this.x = x;
         this.y = y;
-        left = FXGL.texture(name + "-left.png");
-        right = FXGL.texture(name + "-right.png");
-        upDown = FXGL.texture(name + "-up-down.png");
+        left = Assets.region(name + "-left.png");
+        right = Assets.region(name + "-right.png");
+        upDown = Assets.region(name + "-up-down.png");
+        texture = Assets.sprite(name + "-up-down.png");
+        motion = new GhostMotion(name, x, y);
     }
 
     @Override
     public void onAdded() {
-        entity.getViewComponent().addChild(upDown);
+        entity.getViewComponent().addChild(texture);
     }
 
-    @Override
-    public void onUpdate(double tpf) {
-        entity.translateX(dx * tpf);
-        entity.translateY(dy * tpf);
+    /**
+     * Moves the ghost one game step of {@code tpf} seconds. Called by the app, which steps the game in fixed steps.
+     */
+    public void step(double tpf) {
+        MazelaManApp app = FXGL.getAppCast();
+        Maze maze = app.getMaze();
+        GhostModeScheduler ghostModes = app.getGhostModes();
+
+        int ghostTile = maze.tileOf(entity.getX(), entity.getY());
+        int playerTile = ghostTile;
+        Direction playerDirection = Direction.NONE;
+        Entity player = app.getNearestPlayer(entity.getX(), entity.getY());
+        if (player != null) {
+            playerTile = maze.tileOf(player.getX(), player.getY());
+            playerDirection = player.getComponent(PlayerComponent.class).getDirection();
+        }
+        int target = GhostTargeting.target(name, motion.getMode(ghostModes), maze,
+                ghostTile, playerTile, playerDirection, "inky".equals(name) ? findBlinkyTile(maze) : -1);
+
+        motion.advance(SPEED * tpf, maze, target, app.getRandom());
+        entity.setPosition(motion.getX(), motion.getY());
+        app.getCollisionGrid().moved(entity);
+        updateView(motion.isFrightened(ghostModes));
     }
 
-    public void turn() {
-        if (dx < 0.0) {
-            entity.translateX(2);
-            dx = 0.0;
-            dy = getRandomSpeedAndDirection();
-        } else if (dx > 0.0) {
-            entity.translateX(-2);
-            dx = 0.0;
-            dy = getRandomSpeedAndDirection();
-        } else if (dy < 0.0) {
-            entity.translateY(2);
-            dy = 0.0;
-            dx = getRandomSpeedAndDirection();
-        } else {
-            entity.translateY(-2);
-            dy = 0.0;
-            dx = getRandomSpeedAndDirection();
+    private int findBlinkyTile(Maze maze) {
+        for (Entity ghost : FXGL.getGameWorld().getEntitiesByType(EntityType.GHOST)) {
+            if ("blinky".equals(ghost.getComponent(GhostComponent.class).name)) {
+                return maze.tileOf(ghost.getX(), ghost.getY());
+            }
+        }
+        return -1;
+    }
+
+    private void updateView(boolean frightened) {
+        Rectangle2D region = texture.getViewport();
+        if (motion.getDirection() == Direction.LEFT) {
+            region = left;
+        } else if (motion.getDirection() == Direction.RIGHT) {
+            region = right;
+        } else if (motion.getDirection() != Direction.NONE) {
+            region = upDown;
         }
 
-        if (dx < 0.0) {
-            entity.getViewComponent().removeChild(upDown);
-            entity.getViewComponent().addChild(left);
-        } else if (dx > 0.0) {
-            entity.getViewComponent().removeChild(upDown);
-            entity.getViewComponent().addChild(right);
-        } else {
-            entity.getViewComponent().removeChild(left);
-            entity.getViewComponent().removeChild(right);
-            entity.getViewComponent().addChild(upDown);
+        if (region != texture.getViewport()) {
+            texture.setViewport(region);
         }
+        // Frightened ghosts fade out a bit
+        texture.setOpacity(frightened ? 0.5 : 1.0);
+    }
+
+    public boolean isFrightened() {
+        return motion.isFrightened(FXGL.<MazelaManApp>getAppCast().getGhostModes());
+    }
+
+    public void eaten() {
+        MazelaManApp app = FXGL.getAppCast();
+        motion.eaten(app.getGhostModes());
+        entity.setPosition(motion.getX(), motion.getY());
+        app.getCollisionGrid().moved(entity);
+    }
+
+    /**
+     * Moves the spawn point of this ghost, which is where it goes when it is eaten or respawned.
+     */
+    public void setSpawnPoint(double x, double y) {
+        this.x = x;
+        this.y = y;
+        motion.setStart(x, y);
+    }
+
+    public String getName() {
+        return name;
     }
 
-    private double getRandomSpeedAndDirection() {
-        return RANDOM.nextBoolean() ? SPEED : -SPEED;
+    public GhostMotion getMotion() {
+        return motion;
     }
 
     public void respawn() {
         entity.removeFromWorld();
-        FXGL.spawn("Ghost", new SpawnData(x, y).put("name", name));
+        FXGL.<MazelaManApp>getAppCast().getSpawnTemplates().spawn("Ghost", new SpawnData(x, y).put("name", name));
     }
 }
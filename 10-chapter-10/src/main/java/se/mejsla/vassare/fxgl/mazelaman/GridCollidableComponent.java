@@ -0,0 +1,20 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.component.Component;
+
+/**
+ * Makes the player collide with this entity, using the {@link CollisionGrid} instead of the physics world.
+ */
+public class GridCollidableComponent extends Component {
+
+    @Override
+    public void onAdded() {
+        FXGL.<MazelaManApp>getAppCast().getCollisionGrid().add(entity);
+    }
+
+    @Override
+    public void onRemoved() {
+        FXGL.<MazelaManApp>getAppCast().getCollisionGrid().remove(entity);
+    }
+}
@@ -0,0 +1,45 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import java.util.Comparator;
+
+public final class HighScore {
+
+    /** Best first, and the earliest of two equal scores first. */
+    public static final Comparator<HighScore> BEST_FIRST = Comparator.comparingInt(HighScore::getScore)
+            .reversed()
+            .thenComparingLong(HighScore::getSequence);
+
+    private final int score;
+    private final int level;
+    private final long time;
+    private final long sequence;
+
+    public HighScore(int score, int level, long time, long sequence) {
+        this.score = score;
+        this.level = level;
+        this.time = time;
+        this.sequence = sequence;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the time the game ended, in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of games recorded before this one.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,300 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.logging.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Stores high scores in two files with fixed size records.
+ * <p>
+ * Every finished game is appended to a memory mapped log. Each record has a checksum, so a record that was only
+ * partly written when the game crashed is ignored. The best scores are also written to a small top file, which is
+ * all that is read at startup. When the log is full it is compacted down to the best scores, so neither file grows
+ * with the number of games played. All file access happens on a background thread, including opening the files.
+ * A recorded score is added to the top list on that thread too, after the files have been read, and until then it
+ * is shown in a provisional top list.
+ */
+public final class HighScoreStore implements AutoCloseable {
+
+    public static final int TOP_SIZE = 10;
+
+    private static final Logger LOG = Logger.get(HighScoreStore.class);
+
+    private static final int LOG_MAGIC = 0x4D5A4853; // "MZHS"
+    private static final int TOP_MAGIC = 0x4D5A4854; // "MZHT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int LOG_CAPACITY = 4096;
+
+    private final Path directory;
+    private final Path logFile;
+    private final Path topFile;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "high-score-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Scores that have been recorded but not yet added to the top list, with provisional sequence numbers
+    private final List<HighScore> pending = new ArrayList<>();
+    private long provisionalSequence = Long.MAX_VALUE / 2;
+    private List<HighScore> topScores = Collections.emptyList();
+
+    // Only used on the writer thread, and null if the log could not be opened
+    private long nextSequence;
+    private FileChannel logChannel;
+    private MappedByteBuffer log;
+    private int logCount;
+
+    private HighScoreStore(Path directory) {
+        this.directory = directory;
+        this.logFile = directory.resolve("highscores.log");
+        this.topFile = directory.resolve("highscores.top");
+        writer.execute(this::load);
+    }
+
+    /**
+     * Opens the high scores in {@code directory}. The files are read in the background, and the top list is empty
+     * until they have been read.
+     */
+    public static HighScoreStore open(Path directory) {
+        return new HighScoreStore(directory);
+    }
+
+    private void load() {
+        try {
+            Files.createDirectories(directory);
+            mapLog();
+        } catch (IOException e) {
+            LOG.warning("Failed to open high scores, they will not be saved: " + e);
+            log = null;
+            return;
+        }
+        nextSequence = log.getLong(16);
+        List<HighScore> top = readTop();
+        if (top == null) {
+            // The top file is missing or broken, so rebuild it from the log, which holds at most LOG_CAPACITY records
+            top = scanLog();
+        }
+        synchronized (this) {
+            topScores = Collections.unmodifiableList(top);
+        }
+    }
+
+    /**
+     * Returns the best scores, including those that have been recorded but not yet written.
+     */
+    public synchronized List<HighScore> getTopScores() {
+        if (pending.isEmpty()) {
+            return topScores;
+        }
+        return Collections.unmodifiableList(best(topScores, pending));
+    }
+
+    /**
+     * Records the result of a game and returns the new top list, without waiting for the files to be read or
+     * written. The score gets its place in the stored top list in the background.
+     */
+    public synchronized List<HighScore> record(int score, int level) {
+        long time = System.currentTimeMillis();
+        pending.add(new HighScore(score, level, time, provisionalSequence++));
+        // The writer reads the files before it does anything else, so the score is added after that
+        writer.execute(() -> add(score, level, time));
+        return getTopScores();
+    }
+
+    private static List<HighScore> best(List<HighScore> scores, List<HighScore> more) {
+        List<HighScore> top = new ArrayList<>(scores);
+        top.addAll(more);
+        top.sort(HighScore.BEST_FIRST);
+        if (top.size() > TOP_SIZE) {
+            top.subList(TOP_SIZE, top.size()).clear();
+        }
+        return top;
+    }
+
+    private void add(int score, int level, long time) {
+        HighScore highScore = new HighScore(score, level, time, nextSequence++);
+        List<HighScore> top;
+        synchronized (this) {
+            top = Collections.unmodifiableList(best(topScores, List.of(highScore)));
+            topScores = top;
+            pending.remove(0);
+        }
+        write(highScore, top);
+    }
+
+    private void write(HighScore highScore, List<HighScore> top) {
+        if (log == null) {
+            return;
+        }
+        try {
+            if (logCount == LOG_CAPACITY) {
+                // The top list already holds the new score if it made it there, so it is not appended as well
+                compact(top, highScore.getSequence() + 1);
+            } else {
+                putRecord(log, HEADER_SIZE + logCount * RECORD_SIZE, highScore);
+                logCount++;
+            }
+            putLogHeader(log, logCount, highScore.getSequence() + 1);
+            log.force();
+            writeTop(top);
+        } catch (IOException e) {
+            LOG.warning("Failed to save high score: " + e);
+        }
+    }
+
+    private void mapLog() throws IOException {
+        logChannel = FileChannel.open(logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = logChannel.size() == 0;
+        log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) LOG_CAPACITY * RECORD_SIZE);
+        if (created || log.getInt(0) != LOG_MAGIC || log.getInt(4) != VERSION) {
+            putLogHeader(log, 0, 0);
+            log.force();
+        }
+        logCount = Math.min(log.getInt(8), LOG_CAPACITY);
+    }
+
+    private static void putLogHeader(ByteBuffer buffer, int count, long nextSequence) {
+        buffer.putInt(0, LOG_MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, count);
+        buffer.putLong(16, nextSequence);
+    }
+
+    private List<HighScore> scanLog() {
+        List<HighScore> top = new ArrayList<>();
+        for (int i = 0; i < logCount; i++) {
+            HighScore highScore = getRecord(log, HEADER_SIZE + i * RECORD_SIZE);
+            if (highScore != null) {
+                top.add(highScore);
+            }
+        }
+        top.sort(HighScore.BEST_FIRST);
+        return new ArrayList<>(top.subList(0, Math.min(TOP_SIZE, top.size())));
+    }
+
+    // Replaces the log with one that only holds the top scores, none of the others can ever make it to the top again
+    private void compact(List<HighScore> top, long nextSequence) throws IOException {
+        Path temp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + top.size() * RECORD_SIZE);
+        putLogHeader(buffer, top.size(), nextSequence);
+        for (int i = 0; i < top.size(); i++) {
+            putRecord(buffer, HEADER_SIZE + i * RECORD_SIZE, top.get(i));
+        }
+        writeFile(temp, buffer);
+
+        logChannel.close();
+        Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapLog();
+        LOG.info("Compacted high score log to " + logCount + " records");
+    }
+
+    private List<HighScore> readTop() {
+        if (!Files.exists(topFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(topFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + TOP_SIZE * RECORD_SIZE);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the file ends
+            }
+            int count = buffer.getInt(8);
+            if (buffer.getInt(0) != TOP_MAGIC || buffer.getInt(4) != VERSION || count < 0 || count > TOP_SIZE
+                    || buffer.position() < HEADER_SIZE + count * RECORD_SIZE) {
+                return null;
+            }
+            List<HighScore> top = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                HighScore highScore = getRecord(buffer, HEADER_SIZE + i * RECORD_SIZE);
+                if (highScore == null) {
+                    return null;
+                }
+                top.add(highScore);
+            }
+            return top;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeTop(List<HighScore> top) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + top.size() * RECORD_SIZE);
+        buffer.putInt(0, TOP_MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            putRecord(buffer, HEADER_SIZE + i * RECORD_SIZE, top.get(i));
+        }
+        Path temp = topFile.resolveSibling(topFile.getFileName() + ".tmp");
+        writeFile(temp, buffer);
+        Files.move(temp, topFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFile(Path path, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    // Record layout: checksum, score, level, unused, time, sequence
+    private static void putRecord(ByteBuffer buffer, int offset, HighScore highScore) {
+        buffer.putInt(offset + 4, highScore.getScore());
+        buffer.putInt(offset + 8, highScore.getLevel());
+        buffer.putInt(offset + 12, 0);
+        buffer.putLong(offset + 16, highScore.getTime());
+        buffer.putLong(offset + 24, highScore.getSequence());
+        buffer.putInt(offset, checksum(buffer, offset));
+    }
+
+    private static HighScore getRecord(ByteBuffer buffer, int offset) {
+        if (buffer.getInt(offset) != checksum(buffer, offset)) {
+            return null;
+        }
+        return new HighScore(buffer.getInt(offset + 4), buffer.getInt(offset + 8),
+                buffer.getLong(offset + 16), buffer.getLong(offset + 24));
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        CRC32 crc = new CRC32();
+        for (int i = offset + 4; i < offset + RECORD_SIZE; i++) {
+            crc.update(buffer.get(i));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Waits for the scores that have been recorded to be written, and closes the files.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (logChannel != null) {
+            logChannel.close();
+        }
+    }
+}
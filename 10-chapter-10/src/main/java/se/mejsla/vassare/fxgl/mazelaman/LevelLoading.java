@@ -0,0 +1,147 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.level.Level;
+import com.almasb.fxgl.logging.Logger;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Loads a level without freezing the game. The level file is parsed and all entities are created on a background
+ * thread. Then the entities are added to the world a few at a time, within a fixed time budget per frame.
+ * A loading overlay shows the progress meanwhile.
+ */
+public final class LevelLoading {
+
+    private static final Logger LOG = Logger.get(LevelLoading.class);
+
+    // Leave more than half of the 16.6 ms frame for the rest of the update and for rendering
+    private static final long FRAME_BUDGET_NANOS = 6_000_000L;
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "level-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String fileName;
+    private final Consumer<LevelData> onLoaded;
+    private final Runnable onMissing;
+    private final AtomicInteger prepared = new AtomicInteger();
+    private final CompletableFuture<Level> level;
+    private final VBox overlay;
+    private final ProgressBar progressBar = new ProgressBar(0.0);
+
+    private volatile int objectCount = -1;
+    private volatile long prepareNanos;
+    private LevelData data;
+    private LevelTransition transition;
+    private long slowestFrameNanos;
+    private int frames;
+
+    private LevelLoading(String fileName, SpawnTemplates templates, Consumer<LevelData> onLoaded, Runnable onMissing) {
+        this.fileName = fileName;
+        this.onLoaded = onLoaded;
+        this.onMissing = onMissing;
+        this.level = CompletableFuture.supplyAsync(() -> prepare(templates), LOADER);
+
+        Label label = new Label("Loading " + fileName + "...");
+        label.setTextFill(Color.LIGHTGRAY);
+        label.setFont(Font.font(20.0));
+        progressBar.setPrefWidth(300.0);
+        overlay = new VBox(10.0, label, progressBar);
+        overlay.setAlignment(Pos.CENTER);
+        overlay.setPrefSize(FXGL.getAppWidth(), FXGL.getAppHeight());
+        overlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.8);");
+        FXGL.addUINode(overlay);
+    }
+
+    /**
+     * Starts loading level {@code fileName}. When the level has been added to the world, {@code onLoaded} is called,
+     * and if there is no such level, {@code onMissing} is called. Both are called from {@link #update()}.
+     */
+    public static LevelLoading start(String fileName, SpawnTemplates templates,
+                                     Consumer<LevelData> onLoaded, Runnable onMissing) {
+        return new LevelLoading(fileName, templates, onLoaded, onMissing);
+    }
+
+    private Level prepare(SpawnTemplates templates) {
+        long start = System.nanoTime();
+        LevelData levelData = Assets.level(fileName);
+        objectCount = levelData.getObjects().size();
+        // Build the maze now, so that it is not built on the first frame of the level
+        levelData.getMaze();
+        Level result = new MazelaLevelLoader(templates).load(levelData, prepared::incrementAndGet);
+        data = levelData;
+        prepareNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Does the next part of the loading. Must be called every frame, on the FX thread, until the loading is done.
+     */
+    public void update() {
+        long start = System.nanoTime();
+        if (!level.isDone()) {
+            updateProgress(0);
+            return;
+        }
+        if (transition == null) {
+            Level loaded;
+            try {
+                loaded = level.join();
+            } catch (CompletionException e) {
+                FXGL.removeUINode(overlay);
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    onMissing.run();
+                    return;
+                }
+                throw new IllegalStateException("Failed to load level: " + fileName, e.getCause());
+            }
+            transition = new LevelTransition(loaded);
+        }
+
+        boolean done = transition.step(start + FRAME_BUDGET_NANOS);
+        updateProgress(transition.getStepsDone());
+        frames++;
+        slowestFrameNanos = Math.max(slowestFrameNanos, System.nanoTime() - start);
+        if (done) {
+            FXGL.removeUINode(overlay);
+            LOG.info(String.format("Attached %s in %d frames, slowest frame %.2f ms: prepare %.2f ms, %s",
+                    fileName, frames, slowestFrameNanos / 1_000_000.0, prepareNanos / 1_000_000.0,
+                    transition.getTimings()));
+            onLoaded.accept(data);
+        }
+    }
+
+    /**
+     * Stops loading, without calling any of the callbacks. The level entities that were prepared are dropped.
+     */
+    public void cancel() {
+        level.cancel(false);
+        FXGL.removeUINode(overlay);
+    }
+
+    // The first half of the progress is preparing the objects, and the second half is attaching them
+    private void updateProgress(int stepsDone) {
+        int count = objectCount;
+        if (count <= 0) {
+            return;
+        }
+        double preparing = prepared.get() / (double) count;
+        double attaching = transition == null ? 0.0 : stepsDone / (double) Math.max(1, transition.getStepCount());
+        progressBar.setProgress((preparing + attaching) / 2);
+    }
+}
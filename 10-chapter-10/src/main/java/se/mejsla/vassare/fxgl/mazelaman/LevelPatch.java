@@ -0,0 +1,183 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.Entity;
+import com.almasb.fxgl.entity.GameWorld;
+import com.almasb.fxgl.logging.Logger;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two versions of a level, which can be applied to the game world while the level is being
+ * played. Level objects are compared by type, name, position and size, so an object that has moved counts as
+ * removed and added.
+ * <p>
+ * Walls, pills and cherry spawn points are added and removed. Pills that have been eaten stay eaten. The player and
+ * the ghosts keep their positions, and only their spawn points move. A ghost is added or removed when its spawn
+ * point is. Tile layers are redrawn if they have changed.
+ */
+public final class LevelPatch {
+
+    private static final Logger LOG = Logger.get(LevelPatch.class);
+
+    private final LevelData to;
+    private final List<LevelObject> removed = new ArrayList<>();
+    private final List<LevelObject> added = new ArrayList<>();
+    private final boolean tileLayersChanged;
+
+    private LevelPatch(LevelData from, LevelData to) {
+        this.to = to;
+        Map<String, Integer> remaining = count(to.getObjects());
+        for (LevelObject object : from.getObjects()) {
+            if (remaining.merge(key(object), -1, Integer::sum) < 0) {
+                removed.add(object);
+            }
+        }
+        remaining = count(from.getObjects());
+        for (LevelObject object : to.getObjects()) {
+            if (remaining.merge(key(object), -1, Integer::sum) < 0) {
+                added.add(object);
+            }
+        }
+        this.tileLayersChanged = !sameTileLayers(from, to);
+    }
+
+    /**
+     * Returns the changes needed to turn level {@code from} into level {@code to}.
+     */
+    public static LevelPatch between(LevelData from, LevelData to) {
+        return new LevelPatch(from, to);
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty() && !tileLayersChanged;
+    }
+
+    /**
+     * Changes the game world to match the new version of the level. Must be called on the FX thread.
+     *
+     * @return The change in the number of pills left to eat.
+     */
+    public int apply(SpawnTemplates templates) {
+        GameWorld world = FXGL.getGameWorld();
+        int pills = 0;
+        Map<String, LevelObject> removedGhosts = new HashMap<>();
+        for (LevelObject object : removed) {
+            switch (object.getType()) {
+                case "Pill":
+                    pills -= removeAt(world.getEntitiesByType(EntityType.PILL), object);
+                    break;
+                case "PowerPill":
+                    pills -= removeAt(world.getEntitiesByType(EntityType.POWER_PILL), object);
+                    break;
+                case "Wall":
+                    removeAt(world.getEntitiesByType(EntityType.WALL), object);
+                    break;
+                case "CherrySpawnPoint":
+                    removeAt(world.getEntitiesByComponent(CherrySpawnComponent.class), object);
+                    break;
+                case "Ghost":
+                    removedGhosts.put(object.getName(), object);
+                    break;
+                default:
+                    // The player keeps playing, its spawn point is moved when the new one is added
+                    break;
+            }
+        }
+
+        List<LevelObject> spawned = new ArrayList<>();
+        for (LevelObject object : added) {
+            switch (object.getType()) {
+                case "Ghost":
+                    if (removedGhosts.remove(object.getName()) != null) {
+                        for (Entity ghost : ghosts(world, object.getName())) {
+                            ghost.getComponent(GhostComponent.class).setSpawnPoint(object.getX(), object.getY());
+                        }
+                    } else {
+                        spawned.add(object);
+                    }
+                    break;
+                case "Player":
+                    for (Entity player : world.getEntitiesByType(EntityType.PLAYER)) {
+                        player.getComponent(PlayerComponent.class).setSpawnPoint(object.getX(), object.getY());
+                    }
+                    break;
+                case "Pill":
+                case "PowerPill":
+                    pills++;
+                    spawned.add(object);
+                    break;
+                default:
+                    spawned.add(object);
+                    break;
+            }
+        }
+        // Ghosts whose spawn points are gone leave the level
+        for (String name : removedGhosts.keySet()) {
+            ghosts(world, name).forEach(Entity::removeFromWorld);
+        }
+        if (tileLayersChanged) {
+            world.getEntitiesByType(EntityType.TILE_LAYER).forEach(Entity::removeFromWorld);
+            world.addEntities(MazelaLevelLoader.createTileLayers(to).toArray(new Entity[0]));
+        }
+        templates.spawnAll(spawned);
+
+        LOG.info(String.format("Patched %s: %d objects removed, %d added%s",
+                to.getName(), removed.size(), added.size(), tileLayersChanged ? ", tile layers redrawn" : ""));
+        return pills;
+    }
+
+    // Returns 1 if an entity was removed, which it may not be, for example if it is a pill that has been eaten
+    private static int removeAt(List<Entity> entities, LevelObject object) {
+        for (Entity entity : entities) {
+            if (entity.getX() == object.getX() && entity.getY() == object.getY()) {
+                entity.removeFromWorld();
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private static List<Entity> ghosts(GameWorld world, String name) {
+        List<Entity> ghosts = new ArrayList<>();
+        for (Entity ghost : world.getEntitiesByType(EntityType.GHOST)) {
+            if (ghost.getComponent(GhostComponent.class).getName().equals(name)) {
+                ghosts.add(ghost);
+            }
+        }
+        return ghosts;
+    }
+
+    private static Map<String, Integer> count(List<LevelObject> objects) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (LevelObject object : objects) {
+            counts.merge(key(object), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // Object ids are left out, as editors may renumber objects
+    private static String key(LevelObject object) {
+        return object.getType() + "|" + object.getName() + "|" + object.getX() + "|" + object.getY()
+                + "|" + object.getWidth() + "|" + object.getHeight();
+    }
+
+    private static boolean sameTileLayers(LevelData from, LevelData to) {
+        if (from.getColumns() != to.getColumns() || from.getRows() != to.getRows()
+                || from.getTileLayers().size() != to.getTileLayers().size()) {
+            return false;
+        }
+        for (int i = 0; i < from.getTileLayers().size(); i++) {
+            if (!Arrays.equals(from.getTileLayers().get(i), to.getTileLayers().get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
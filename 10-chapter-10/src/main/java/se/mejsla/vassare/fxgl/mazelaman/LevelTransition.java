@@ -0,0 +1,73 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.Entity;
+import com.almasb.fxgl.entity.GameWorld;
+import com.almasb.fxgl.entity.components.IrremovableComponent;
+import com.almasb.fxgl.entity.level.Level;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Switches from the current level to a new one, by removing the entities of the old level and adding those of the
+ * new one. Irremovable entities like the background are kept. The transition can be done in steps, removing and
+ * adding entities until a deadline has passed. The time spent in each phase is measured, so that level switches can
+ * be compared.
+ * <p>
+ * Walls that both levels have in common used to be kept as well, but {@code LevelSwitchBenchmark} measures that
+ * against a full rebuild, and walls are cheap entities without physics bodies.
+ */
+public final class LevelTransition {
+
+    private final GameWorld world = FXGL.getGameWorld();
+    private final List<Entity> removed = new ArrayList<>();
+    private final List<Entity> added;
+    private int removedCount;
+    private int addedCount;
+    private long removeNanos;
+    private long addNanos;
+
+    public LevelTransition(Level level) {
+        for (Entity entity : world.getEntities()) {
+            if (!entity.hasComponent(IrremovableComponent.class)) {
+                removed.add(entity);
+            }
+        }
+        added = level.getEntities();
+    }
+
+    /**
+     * Removes and adds entities until all are done or {@code deadline}, in {@link System#nanoTime()}, has passed.
+     * Returns true when the transition is done.
+     */
+    public boolean step(long deadline) {
+        long start = System.nanoTime();
+        while (removedCount < removed.size() && System.nanoTime() < deadline) {
+            removed.get(removedCount++).removeFromWorld();
+        }
+        long removedAt = System.nanoTime();
+        removeNanos += removedAt - start;
+        while (removedCount == removed.size() && addedCount < added.size() && System.nanoTime() < deadline) {
+            world.addEntity(added.get(addedCount++));
+        }
+        addNanos += System.nanoTime() - removedAt;
+        return removedCount == removed.size() && addedCount == added.size();
+    }
+
+    /**
+     * Returns a summary of the transition, with the time spent in each phase.
+     */
+    public String getTimings() {
+        return String.format("remove %.2f ms, add %.2f ms (removed %d, added %d)",
+                removeNanos / 1_000_000.0, addNanos / 1_000_000.0, removed.size(), added.size());
+    }
+
+    public int getStepCount() {
+        return removed.size() + added.size();
+    }
+
+    public int getStepsDone() {
+        return removedCount + addedCount;
+    }
+}
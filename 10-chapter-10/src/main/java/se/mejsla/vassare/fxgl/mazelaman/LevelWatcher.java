@@ -0,0 +1,102 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.logging.Logger;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory of level files during development, and parses each level file that changes. The files are
+ * parsed on the watcher thread, and handed over with {@link #poll()}, so that the game world is only changed on
+ * the FX thread. A file that cannot be parsed, for example because it is only half written, is skipped with a
+ * warning, and is parsed again the next time it changes.
+ */
+public final class LevelWatcher implements AutoCloseable {
+
+    private static final Logger LOG = Logger.get(LevelWatcher.class);
+
+    // Editors often write a file in several steps, so wait for the events to settle before parsing
+    private static final long SETTLE_MILLIS = 100;
+
+    private final Path directory;
+    private final WatchService watchService;
+    private final Queue<LevelData> changed = new ConcurrentLinkedQueue<>();
+
+    private LevelWatcher(Path directory) throws IOException {
+        this.directory = directory;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Starts watching the level files in {@code directory}.
+     */
+    public static LevelWatcher start(Path directory) throws IOException {
+        LevelWatcher watcher = new LevelWatcher(directory);
+        Thread thread = new Thread(watcher::watch, "level-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Watching levels in " + directory.toAbsolutePath());
+        return watcher;
+    }
+
+    /**
+     * Returns the next level that has changed, or null if there is none.
+     */
+    public LevelData poll() {
+        return changed.poll();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                Set<String> fileNames = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        String fileName = String.valueOf(event.context());
+                        if (fileName.endsWith(".tmx")) {
+                            fileNames.add(fileName);
+                        }
+                    }
+                    key.reset();
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                for (String fileName : fileNames) {
+                    parse(fileName);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped watching
+        }
+    }
+
+    private void parse(String fileName) {
+        try {
+            LevelData levelData = LevelData.load(directory.resolve(fileName));
+            // Build the maze now, so that a level without a player is rejected here and not in the game
+            levelData.getMaze();
+            changed.add(levelData);
+            LOG.info("Reloaded " + fileName);
+        } catch (RuntimeException e) {
+            LOG.warning("Failed to reload " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,79 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.Entity;
+import com.almasb.fxgl.entity.GameWorld;
+import com.almasb.fxgl.entity.level.Level;
+import com.almasb.fxgl.entity.level.LevelLoader;
+import com.almasb.fxgl.texture.Texture;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Tileset;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads TMX levels from the level data in {@link Assets}, so each level file is only parsed once. The objects are
+ * created with the {@link SpawnTemplates}, and each tile layer is drawn into a single image.
+ */
+public class MazelaLevelLoader implements LevelLoader {
+
+    private final SpawnTemplates templates;
+
+    public MazelaLevelLoader(SpawnTemplates templates) {
+        this.templates = templates;
+    }
+
+    @Override
+    public Level load(URL url, GameWorld world) {
+        String path = url.getPath();
+        return load(Assets.level(path.substring(path.lastIndexOf('/') + 1)), () -> { });
+    }
+
+    /**
+     * Creates the entities of level {@code data} without touching the game world, so it can be done on any thread.
+     * Calls {@code onObjectCreated} after each level object.
+     */
+    public Level load(LevelData data, Runnable onObjectCreated) {
+        List<Entity> entities = createTileLayers(data);
+        entities.addAll(templates.createAll(data.getObjects(), onObjectCreated));
+        return new Level(data.getColumns() * data.getTileWidth(), data.getRows() * data.getTileHeight(), entities);
+    }
+
+    /**
+     * Creates one entity for each tile layer of level {@code data}, showing the whole layer as one image.
+     */
+    public static List<Entity> createTileLayers(LevelData data) {
+        List<Entity> entities = new ArrayList<>();
+        for (int[] layer : data.getTileLayers()) {
+            entities.add(FXGL.entityBuilder()
+                    .type(EntityType.TILE_LAYER)
+                    .view(new Texture(drawTileLayer(data, layer)))
+                    .zIndex(-1)
+                    .build());
+        }
+        return entities;
+    }
+
+    private static Image drawTileLayer(LevelData data, int[] layer) {
+        Tileset tileset = data.getTileset();
+        Image tiles = Assets.levelImage(tileset.getImage());
+        WritableImage image = new WritableImage(data.getColumns() * data.getTileWidth(),
+                data.getRows() * data.getTileHeight());
+        PixelWriter writer = image.getPixelWriter();
+        for (int i = 0; i < layer.length; i++) {
+            int gid = layer[i];
+            if (gid >= tileset.getFirstGid()) {
+                int x = (i % data.getColumns()) * data.getTileWidth();
+                int y = (i / data.getColumns()) * data.getTileHeight();
+                writer.setPixels(x, y, tileset.getTileWidth(), tileset.getTileHeight(),
+                        tiles.getPixelReader(), tileset.tileX(gid), tileset.tileY(gid));
+            }
+        }
+        return image;
+    }
+}
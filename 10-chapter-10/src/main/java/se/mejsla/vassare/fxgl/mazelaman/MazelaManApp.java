@@ -2,25 +2,68 @@ package se.mejsla.vassare.fxgl.mazelaman;
 
 import com.almasb.fxgl.app.GameApplication;
 import com.almasb.fxgl.app.GameSettings;
+import com.almasb.fxgl.app.scene.Viewport;
 import com.almasb.fxgl.dsl.FXGL;
 import com.almasb.fxgl.entity.Entity;
+import com.almasb.fxgl.entity.GameWorld;
 import com.almasb.fxgl.entity.SpawnData;
-import com.almasb.fxgl.physics.CollisionHandler;
-import com.almasb.fxgl.physics.PhysicsWorld;
-import javafx.application.Platform;
+import com.almasb.fxgl.logging.Logger;
 import javafx.scene.control.Label;
 import javafx.scene.input.KeyCode;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GameClock;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GhostModeScheduler;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Maze;
+import se.mejsla.vassare.fxgl.mazelaman.sim.RewindBuffer;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Rng;
+import se.mejsla.vassare.fxgl.mazelaman.sim.SaveGame;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 public class MazelaManApp extends GameApplication {
 
+    private static final Logger LOG = Logger.get(MazelaManApp.class);
+
     private static final int HEIGHT = 600;
     private static final int WIDTH = 800;
+    // Keep the last 10 seconds of the level, and scrub back through them at twice the speed of the game
+    private static final int REWIND_TICKS = (int) Math.round(10.0 / GameClock.STEP);
+    private static final int SCRUB_TICKS_PER_FRAME = 2;
+    private static final Path SAVE_FILE = Paths.get(System.getProperty("user.home"), ".mazela-man", "save.bin");
 
     private static int startLevel = 1;
+    private static boolean twoPlayers;
+    private static double timeScale = 1.0;
+    // Only the first game after --continue goes on from the saved game, later games start over
+    private static boolean resumeSavedGame;
+    private static HighScoreStore highScores;
+    private static Path levelsDirectory;
+    private static LevelWatcher levelWatcher;
+
+    private final TickScheduler ticks = new TickScheduler();
+    private final CollisionGrid collisionGrid = new CollisionGrid();
+    private final GameClock clock = new GameClock();
+    // The ghosts and cherry spawn points draw from this, so that its state can be saved and rewound with the game
+    private final Rng random = new Rng(0);
+    private SpawnTemplates spawnTemplates;
+    private GhostModeScheduler ghostModes;
+    private LevelLoading loading;
+    private Maze maze;
+    private LevelData levelData;
+    private WorldState worldState;
+    private RewindBuffer rewind;
+    private boolean rewinding;
+    private long[] savedState;
 
     @Override
     protected void initSettings(GameSettings settings) {
@@ -31,45 +74,202 @@ public class MazelaManApp extends GameApplication {
         settings.setMainMenuEnabled(true);
     }
 
+    @Override
+    protected void onPreInit() {
+        // Load all assets in the background while the main menu is shown
+        Assets.preload();
+    }
+
     @Override
     protected void initGameVars(Map<String, Object> vars) {
         vars.put("level", startLevel);
         vars.put("lives", 3);
         vars.put("score", 0);
+        vars.put("lives2", twoPlayers ? 3 : 0);
+        vars.put("score2", 0);
     }
 
     @Override
     protected void initGame() {
-        FXGL.getGameWorld().addEntityFactory(new MazelaManFactory());
+        MazelaManFactory factory = new MazelaManFactory();
+        FXGL.getGameWorld().addEntityFactory(factory);
+        spawnTemplates = new SpawnTemplates(factory);
+        if (highScores == null) {
+            highScores = HighScoreStore.open(Paths.get(System.getProperty("user.home"), ".mazela-man"));
+            // The store writes on a daemon thread, so it is closed on exit to let the last scores be written
+            Runtime.getRuntime().addShutdownHook(new Thread(MazelaManApp::closeHighScores, "high-score-close"));
+        }
+        if (levelsDirectory != null && levelWatcher == null) {
+            levelWatcher = watchLevels();
+        }
+        endGame();
+        // A saved game is continued from the level it was saved on
+        savedState = resumeSavedGame ? readSavedGame() : null;
+        resumeSavedGame = false;
+        if (savedState != null) {
+            FXGL.set("level", WorldState.levelOf(savedState));
+        }
+        ghostModes = new GhostModeScheduler();
+        random.setSeed(System.nanoTime());
+        clock.setScale(timeScale);
+        // The background is irremovable, so it survives level changes and only needs to be spawned once
+        spawnTemplates.spawn("Background", new SpawnData(0, 0).put("width", WIDTH).put("height", HEIGHT));
         initLevel();
     }
 
     private void initLevel() {
-        FXGL.spawn("Background", new SpawnData(0, 0).put("width", WIDTH).put("height", HEIGHT));
-        setLevelFromMapOrGameOver();
+        // The game is on hold while the level is loading, and game over if there are no more levels
+        loading = LevelLoading.start(LevelData.fileName(FXGL.geti("level")), spawnTemplates, this::levelLoaded, () -> {
+            loading = null;
+            gameOver(true);
+        });
+    }
+
+    private void levelLoaded(LevelData data) {
+        loading = null;
+        levelData = data;
+        maze = data.getMaze();
+        ghostModes.reset();
+        // The level only has one player, the second player starts in the same place
+        Entity first = getPlayer(1).orElseThrow();
+        if (FXGL.geti(var("lives", 2)) > 0) {
+            spawnTemplates.spawn("Player", new SpawnData(first.getX(), first.getY()).put("player", 2));
+        }
+        if (FXGL.geti(var("lives", 1)) == 0) {
+            first.removeFromWorld();
+        }
         // Store the number of pills on this level
-        FXGL.set("pills", FXGL.getGameWorld().getEntitiesByType(EntityType.PILL).size());
+        FXGL.set("pills", FXGL.getGameWorld().getEntitiesByType(EntityType.PILL, EntityType.POWER_PILL).size());
+        detachWorldState();
+        worldState = new WorldState(this, levelData);
+        if (savedState != null) {
+            continueSavedGame();
+        }
+        startRecording();
     }
 
-    private void setLevelFromMapOrGameOver() {
+    private void continueSavedGame() {
+        long start = System.nanoTime();
+        if (worldState.stateSize(savedState) == savedState.length) {
+            worldState.readState(savedState);
+            LOG.info(String.format("Restored saved game in %.2f ms", (System.nanoTime() - start) / 1_000_000.0));
+        } else {
+            LOG.warning("The saved game does not match " + levelData.getName() + ", starting the level over");
+        }
+        savedState = null;
+    }
+
+    /**
+     * Saves the level being played, so that the app can go on from here when started with --continue.
+     */
+    private void saveGame() {
+        if (loading != null || worldState == null) {
+            return;
+        }
+        long start = System.nanoTime();
         try {
-            FXGL.setLevelFromMap("level" + FXGL.geti("level") + ".tmx");
-        } catch (IllegalArgumentException e) {
-            gameOver(true);
+            Files.createDirectories(SAVE_FILE.getParent());
+            SaveGame.save(worldState, SAVE_FILE);
+            LOG.info(String.format("Saved game in %.2f ms", (System.nanoTime() - start) / 1_000_000.0));
+        } catch (IOException e) {
+            LOG.warning("Failed to save game: " + e.getMessage());
+        }
+    }
+
+    private static long[] readSavedGame() {
+        if (!Files.exists(SAVE_FILE)) {
+            return null;
         }
+        try {
+            return SaveGame.read(SAVE_FILE);
+        } catch (IOException e) {
+            LOG.warning("Ignoring saved game: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // A game that is over cannot be continued
+    private static void deleteSavedGame() {
+        try {
+            Files.deleteIfExists(SAVE_FILE);
+        } catch (IOException e) {
+            LOG.warning("Failed to delete saved game: " + e.getMessage());
+        }
+    }
+
+    // The history only covers the current level, as the state of one level cannot be restored on another
+    private void startRecording() {
+        rewind = new RewindBuffer(worldState, worldState.stateSize(), REWIND_TICKS);
+        rewind.capture();
     }
 
     private void gameOver(boolean reachedEndOfGame) {
+        deleteSavedGame();
         StringBuilder builder = new StringBuilder();
         builder.append("Game Over!\n\n");
         if (reachedEndOfGame) {
             builder.append("You have reached the end of the game!\n\n");
         }
-        builder.append("Final score: ")
-                .append(FXGL.geti("score"))
-                .append("\nFinal level: ")
-                .append(FXGL.geti("level"));
-        FXGL.getDialogService().showMessageBox(builder.toString(), () -> FXGL.getGameController().gotoMainMenu());
+        List<HighScore> topScores = List.of();
+        for (int player = 1; player <= (twoPlayers ? 2 : 1); player++) {
+            builder.append(twoPlayers ? "Player " + player + " final score: " : "Final score: ")
+                    .append(FXGL.geti(var("score", player)))
+                    .append("\n");
+            topScores = highScores.record(FXGL.geti(var("score", player)), FXGL.geti("level"));
+        }
+        builder.append("Final level: ")
+                .append(FXGL.geti("level"))
+                .append("\n\nHigh scores:");
+        for (int i = 0; i < topScores.size(); i++) {
+            builder.append("\n")
+                    .append(i + 1)
+                    .append(". ")
+                    .append(topScores.get(i).getScore())
+                    .append(" (level ")
+                    .append(topScores.get(i).getLevel())
+                    .append(")");
+        }
+        FXGL.getDialogService().showMessageBox(builder.toString(), () -> {
+            endGame();
+            FXGL.getGameController().gotoMainMenu();
+        });
+    }
+
+    /**
+     * Tears down everything that belongs to the current game, and is not removed together with the entities.
+     */
+    private void endGame() {
+        if (loading != null) {
+            loading.cancel();
+            loading = null;
+        }
+        detachWorldState();
+        ticks.clear();
+        collisionGrid.clear();
+        clock.reset();
+    }
+
+    private void detachWorldState() {
+        if (worldState != null) {
+            worldState.detach();
+            worldState = null;
+        }
+    }
+
+    private static void closeHighScores() {
+        try {
+            highScores.close();
+        } catch (IOException e) {
+            LOG.warning("Failed to close high scores: " + e.getMessage());
+        }
+    }
+
+    private static LevelWatcher watchLevels() {
+        try {
+            return LevelWatcher.start(levelsDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to watch levels in " + levelsDirectory, e);
+        }
     }
 
     @Override
@@ -91,72 +291,277 @@ public class MazelaManApp extends GameApplication {
         levelLabel.setFont(Font.font(20.0));
         levelLabel.textProperty().bind(FXGL.getip("level").asString("Level: %d"));
         FXGL.addUINode(levelLabel, 720, 10);
+
+        if (twoPlayers) {
+            Label score2Label = new Label();
+            score2Label.setTextFill(Color.LIGHTGRAY);
+            score2Label.setFont(Font.font(20.0));
+            score2Label.textProperty().bind(FXGL.getip("score2").asString("Player 2 score: %d"));
+            FXGL.addUINode(score2Label, 20, 565);
+
+            Label lives2Label = new Label();
+            lives2Label.setTextFill(Color.LIGHTGRAY);
+            lives2Label.setFont(Font.font(20.0));
+            lives2Label.textProperty().bind(FXGL.getip("lives2").asString("Player 2 lives: %d"));
+            FXGL.addUINode(lives2Label, 600, 565);
+        }
     }
 
     @Override
-    protected void initPhysics() {
-        PhysicsWorld physics = FXGL.getPhysicsWorld();
-        physics.setGravity(0, 0);
-        physics.addCollisionHandler(new CollisionHandler(EntityType.PLAYER, EntityType.PILL) {
-            @Override
-            protected void onCollisionBegin(Entity player, Entity pill) {
-                FXGL.play("pill.wav");
-                pill.removeFromWorld();
-                FXGL.inc("score", 10);
-                FXGL.inc("pills", -1);
-                if (FXGL.geti("pills") == 0) {
-                    FXGL.inc("level", 1);
-                    FXGL.play("level.wav");
-                    Platform.runLater(() -> initLevel());
-                }
+    protected void onUpdate(double tpf) {
+        if (loading != null) {
+            loading.update();
+            return;
+        }
+        if (levelWatcher != null) {
+            reloadLevels();
+            if (loading != null) {
+                return;
             }
-        });
-        physics.addCollisionHandler(new CollisionHandler(EntityType.PLAYER, EntityType.CHERRY) {
-            @Override
-            protected void onCollisionBegin(Entity player, Entity cherry) {
-                FXGL.play("cherry.wav");
-                cherry.removeFromWorld();
-                FXGL.inc("score", 100);
+        }
+        if (rewinding) {
+            // The game stands still while rewinding, and goes on from where it was rewound to when the key is released
+            rewinding = false;
+            rewind.restore(Math.max(rewind.getOldestTick(), worldState.getFrame() - SCRUB_TICKS_PER_FRAME));
+            clock.reset();
+        } else {
+            // Stop stepping if the level is completed or lost during a step
+            int steps = clock.advance(tpf);
+            for (int i = 0; i < steps && loading == null; i++) {
+                step(GameClock.STEP);
             }
-        });
-        physics.addCollisionHandler(new CollisionHandler(EntityType.PLAYER, EntityType.GHOST) {
-            @Override
-            protected void onCollisionBegin(Entity player, Entity ghost) {
-                FXGL.play("death.wav");
-                FXGL.inc("lives", -1);
-                if (FXGL.geti("lives") > 0) {
-                    FXGL.getGameWorld()
-                            .getEntitiesByType(EntityType.GHOST)
-                            .forEach(entity -> entity.getComponent(GhostComponent.class).respawn());
-                    player.getComponent(PlayerComponent.class).respawn();
-                } else {
-                    gameOver(false);
-                }
+        }
+        followPlayers(FXGL.getGameWorld().getEntitiesByType(EntityType.PLAYER));
+    }
+
+    // The game moves in fixed steps of game time, so it plays the same at any time scale
+    private void step(double tpf) {
+        ghostModes.update(tpf);
+        ticks.update(tpf);
+        GameWorld world = FXGL.getGameWorld();
+        for (Entity ghost : world.getEntitiesByType(EntityType.GHOST)) {
+            ghost.getComponent(GhostComponent.class).step(tpf);
+        }
+        List<Entity> players = world.getEntitiesByType(EntityType.PLAYER);
+        for (Entity player : players) {
+            player.getComponent(PlayerComponent.class).step(tpf);
+        }
+        for (Entity entity : world.getEntitiesByComponent(DespawnComponent.class)) {
+            entity.getComponent(DespawnComponent.class).step(tpf);
+        }
+        for (Entity player : players) {
+            collisionGrid.check(player, this::onPlayerCollision);
+        }
+        if (loading == null) {
+            worldState.nextFrame();
+            rewind.capture();
+        }
+    }
+
+    // The current level is patched in place, while other levels are loaded from the new file when they are reached
+    private void reloadLevels() {
+        // A level completed by a patch starts loading the next one, so the rest are left queued until it has loaded
+        while (loading == null) {
+            LevelData data = levelWatcher.poll();
+            if (data == null) {
+                return;
             }
-        });
-        physics.addCollisionHandler(new CollisionHandler(EntityType.GHOST, EntityType.WALL) {
-            @Override
-            protected void onCollisionBegin(Entity ghost, Entity wall) {
-                ghost.getComponent(GhostComponent.class).turn();
+            Assets.replaceLevel(data);
+            if (data.getName().equals(levelData.getName())) {
+                FXGL.inc("pills", LevelPatch.between(levelData, data).apply(spawnTemplates));
+                levelData = data;
+                maze = data.getMaze();
+                detachWorldState();
+                worldState = new WorldState(this, data);
+                startRecording();
+                if (FXGL.geti("pills") == 0) {
+                    levelCompleted();
+                }
             }
-        });
+        }
+    }
+
+    // Both players share the one viewport, which only needs to move if the level is larger than the screen
+    private void followPlayers(List<Entity> players) {
+        int levelWidth = levelData.getColumns() * levelData.getTileWidth();
+        int levelHeight = levelData.getRows() * levelData.getTileHeight();
+        if (players.isEmpty() || (levelWidth <= WIDTH && levelHeight <= HEIGHT)) {
+            return;
+        }
+        double x = players.stream().mapToDouble(Entity::getX).average().orElse(0.0);
+        double y = players.stream().mapToDouble(Entity::getY).average().orElse(0.0);
+        Viewport viewport = FXGL.getGameScene().getViewport();
+        viewport.setX(Math.max(0, Math.min(levelWidth - WIDTH, x - WIDTH / 2.0)));
+        viewport.setY(Math.max(0, Math.min(levelHeight - HEIGHT, y - HEIGHT / 2.0)));
+    }
+
+    private void onPlayerCollision(Entity player, Entity entity) {
+        String score = var("score", player.getComponent(PlayerComponent.class).getIndex());
+        switch ((EntityType) entity.getType()) {
+            case PILL:
+                FXGL.play("pill.wav");
+                entity.removeFromWorld();
+                FXGL.inc(score, 10);
+                pillEaten();
+                break;
+            case POWER_PILL:
+                FXGL.play("pill.wav");
+                entity.removeFromWorld();
+                FXGL.inc(score, 50);
+                ghostModes.frighten();
+                pillEaten();
+                break;
+            case CHERRY:
+                FXGL.play("cherry.wav");
+                entity.removeFromWorld();
+                FXGL.inc(score, 100);
+                break;
+            case GHOST:
+                playerMeetsGhost(player, entity);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void playerMeetsGhost(Entity player, Entity ghost) {
+        PlayerComponent playerComponent = player.getComponent(PlayerComponent.class);
+        GhostComponent ghostComponent = ghost.getComponent(GhostComponent.class);
+        if (ghostComponent.isFrightened()) {
+            FXGL.play("cherry.wav");
+            FXGL.inc(var("score", playerComponent.getIndex()), 200);
+            ghostComponent.eaten();
+            return;
+        }
+
+        FXGL.play("death.wav");
+        String lives = var("lives", playerComponent.getIndex());
+        FXGL.inc(lives, -1);
+        if (FXGL.geti(lives) > 0) {
+            ghostModes.reset();
+            FXGL.getGameWorld()
+                    .getEntitiesByType(EntityType.GHOST)
+                    .forEach(entity -> entity.getComponent(GhostComponent.class).respawn());
+            playerComponent.respawn();
+        } else if (FXGL.geti(var("lives", 1)) + FXGL.geti(var("lives", 2)) > 0) {
+            // The other player plays on alone
+            player.removeFromWorld();
+        } else {
+            gameOver(false);
+        }
+    }
+
+    private void pillEaten() {
+        FXGL.inc("pills", -1);
+        if (FXGL.geti("pills") == 0) {
+            levelCompleted();
+        }
+    }
+
+    private void levelCompleted() {
+        FXGL.inc("level", 1);
+        FXGL.play("level.wav");
+        initLevel();
     }
 
     @Override
     protected void initInput() {
-        FXGL.onKey(KeyCode.A, "Move Left", () -> getPlayer().getComponent(PlayerComponent.class).left());
-        FXGL.onKey(KeyCode.D, "Move Right", () -> getPlayer().getComponent(PlayerComponent.class).right());
-        FXGL.onKey(KeyCode.W, "Move Up", () -> getPlayer().getComponent(PlayerComponent.class).up());
-        FXGL.onKey(KeyCode.S, "Move Down", () -> getPlayer().getComponent(PlayerComponent.class).down());
+        FXGL.onKey(KeyCode.A, "Move Left", () -> withPlayer(1, PlayerComponent::left));
+        FXGL.onKey(KeyCode.D, "Move Right", () -> withPlayer(1, PlayerComponent::right));
+        FXGL.onKey(KeyCode.W, "Move Up", () -> withPlayer(1, PlayerComponent::up));
+        FXGL.onKey(KeyCode.S, "Move Down", () -> withPlayer(1, PlayerComponent::down));
+        FXGL.onKey(KeyCode.LEFT, "Player 2 Move Left", () -> withPlayer(2, PlayerComponent::left));
+        FXGL.onKey(KeyCode.RIGHT, "Player 2 Move Right", () -> withPlayer(2, PlayerComponent::right));
+        FXGL.onKey(KeyCode.UP, "Player 2 Move Up", () -> withPlayer(2, PlayerComponent::up));
+        FXGL.onKey(KeyCode.DOWN, "Player 2 Move Down", () -> withPlayer(2, PlayerComponent::down));
+        FXGL.onKeyDown(KeyCode.PAGE_UP, "Speed Up", clock::faster);
+        FXGL.onKeyDown(KeyCode.PAGE_DOWN, "Slow Down", clock::slower);
+        FXGL.onKey(KeyCode.BACK_SPACE, "Rewind", () -> rewinding = true);
+        FXGL.onKeyDown(KeyCode.F5, "Save", this::saveGame);
+    }
+
+    private static void withPlayer(int index, Consumer<PlayerComponent> action) {
+        getPlayer(index).ifPresent(player -> action.accept(player.getComponent(PlayerComponent.class)));
+    }
+
+    private static Optional<Entity> getPlayer(int index) {
+        return FXGL.getGameWorld().getEntitiesByType(EntityType.PLAYER).stream()
+                .filter(player -> player.getComponent(PlayerComponent.class).getIndex() == index)
+                .findFirst();
+    }
+
+    /**
+     * Returns the player closest to ({@code x}, {@code y}), or null if there is no player.
+     */
+    public Entity getNearestPlayer(double x, double y) {
+        Entity nearest = null;
+        double nearestDistance = Double.MAX_VALUE;
+        for (Entity player : FXGL.getGameWorld().getEntitiesByType(EntityType.PLAYER)) {
+            double dx = player.getX() - x;
+            double dy = player.getY() - y;
+            if (dx * dx + dy * dy < nearestDistance) {
+                nearest = player;
+                nearestDistance = dx * dx + dy * dy;
+            }
+        }
+        return nearest;
+    }
+
+    // The first player uses the plain variable names, which the single player game has always used
+    private static String var(String name, int player) {
+        return player == 1 ? name : name + player;
     }
 
-    private static Entity getPlayer() {
-        return FXGL.getGameWorld().getSingleton(EntityType.PLAYER);
+    /**
+     * Returns true while a level is being loaded, when the game is on hold.
+     */
+    public boolean isLoading() {
+        return loading != null;
+    }
+
+    public SpawnTemplates getSpawnTemplates() {
+        return spawnTemplates;
+    }
+
+    public CollisionGrid getCollisionGrid() {
+        return collisionGrid;
+    }
+
+    public TickScheduler getTicks() {
+        return ticks;
+    }
+
+    public GameClock getClock() {
+        return clock;
+    }
+
+    public Rng getRandom() {
+        return random;
+    }
+
+    public GhostModeScheduler getGhostModes() {
+        return ghostModes;
+    }
+
+    public Maze getMaze() {
+        return maze;
     }
 
     public static void main(String[] args) {
-        if (args.length > 0) {
-            startLevel = Integer.parseInt(args[0]);
+        for (String arg : args) {
+            if ("--two-players".equals(arg)) {
+                twoPlayers = true;
+            } else if ("--continue".equals(arg)) {
+                resumeSavedGame = true;
+            } else if ("--hot-reload".equals(arg)) {
+                levelsDirectory = Paths.get("src", "main", "resources", "assets", "levels");
+            } else if (arg.startsWith("--hot-reload=")) {
+                levelsDirectory = Paths.get(arg.substring("--hot-reload=".length()));
+            } else if (arg.startsWith("--time-scale=")) {
+                timeScale = Double.parseDouble(arg.substring("--time-scale=".length()));
+            } else {
+                startLevel = Integer.parseInt(arg);
+            }
         }
         launch(args);
     }
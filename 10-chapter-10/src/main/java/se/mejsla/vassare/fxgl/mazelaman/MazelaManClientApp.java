@@ -0,0 +1,141 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.app.GameApplication;
+import com.almasb.fxgl.app.GameSettings;
+import com.almasb.fxgl.dsl.FXGL;
+import javafx.scene.control.Label;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.KeyCode;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import se.mejsla.vassare.fxgl.mazelaman.net.GameClient;
+import se.mejsla.vassare.fxgl.mazelaman.net.GameServer;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+import se.mejsla.vassare.fxgl.mazelaman.tools.FrameRenderer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A thin client that shows a game played on a {@link GameServer}. Input is sent to the server, and the UI is fed
+ * from the states the server sends back, so no game rules run here.
+ * <p>
+ * Usage: MazelaManClientApp [host] [port]
+ */
+public class MazelaManClientApp extends GameApplication {
+
+    private static final int HEIGHT = 600;
+    private static final int WIDTH = 800;
+
+    private static String host = "localhost";
+    private static int port = GameServer.DEFAULT_PORT;
+
+    private final FrameRenderer renderer = new FrameRenderer();
+    private Game mirror;
+    private GameClient client;
+    private BufferedImage frame;
+    private WritableImage image;
+    private ImageView view;
+    private int action = Game.NONE;
+
+    @Override
+    protected void initSettings(GameSettings settings) {
+        settings.setWidth(WIDTH);
+        settings.setHeight(HEIGHT);
+        settings.setTitle("MazelaMan Client");
+        settings.setVersion("chapter 10");
+    }
+
+    @Override
+    protected void initGameVars(Map<String, Object> vars) {
+        vars.put("level", 1);
+        vars.put("lives", 0);
+        vars.put("score", 0);
+    }
+
+    @Override
+    protected void initGame() {
+        List<LevelData> levels = LevelData.loadAll();
+        mirror = new Game(levels);
+        try {
+            client = GameClient.connect(host, port, levels);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to connect to " + host + ":" + port, e);
+        }
+        view = new ImageView();
+        FXGL.entityBuilder().view(view).buildAndAttach();
+    }
+
+    @Override
+    protected void initUI() {
+        Label scoreLabel = new Label();
+        scoreLabel.setTextFill(Color.LIGHTGRAY);
+        scoreLabel.setFont(Font.font(20.0));
+        scoreLabel.textProperty().bind(FXGL.getip("score").asString("Score: %d"));
+        FXGL.addUINode(scoreLabel, 20, 10);
+
+        Label livesLabel = new Label();
+        livesLabel.setTextFill(Color.LIGHTGRAY);
+        livesLabel.setFont(Font.font(20.0));
+        livesLabel.textProperty().bind(FXGL.getip("lives").asString("Lives: %d"));
+        FXGL.addUINode(livesLabel, 640, 10);
+
+        Label levelLabel = new Label();
+        levelLabel.setTextFill(Color.LIGHTGRAY);
+        levelLabel.setFont(Font.font(20.0));
+        levelLabel.textProperty().bind(FXGL.getip("level").asString("Level: %d"));
+        FXGL.addUINode(levelLabel, 720, 10);
+    }
+
+    @Override
+    protected void initInput() {
+        FXGL.onKey(KeyCode.A, "Move Left", () -> action = Game.LEFT);
+        FXGL.onKey(KeyCode.D, "Move Right", () -> action = Game.RIGHT);
+        FXGL.onKey(KeyCode.W, "Move Up", () -> action = Game.UP);
+        FXGL.onKey(KeyCode.S, "Move Down", () -> action = Game.DOWN);
+    }
+
+    @Override
+    protected void onUpdate(double tpf) {
+        // Like the local game, the player keeps the last direction pressed
+        client.send(action);
+        if (!client.poll(mirror)) {
+            return;
+        }
+        FXGL.set("score", mirror.getScore());
+        FXGL.set("lives", mirror.getLives());
+        FXGL.set("level", mirror.getLevel());
+        render();
+    }
+
+    private void render() {
+        LevelData levelData = mirror.getLevelData();
+        int width = levelData.getColumns() * levelData.getTileWidth();
+        int height = levelData.getRows() * levelData.getTileHeight();
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            image = new WritableImage(width, height);
+            view.setImage(image);
+        }
+        renderer.render(mirror, frame);
+        int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            host = args[0];
+        }
+        if (args.length > 1) {
+            port = Integer.parseInt(args[1]);
+        }
+        launch(args);
+    }
+}
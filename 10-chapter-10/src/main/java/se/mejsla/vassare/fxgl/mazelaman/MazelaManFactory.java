@@ -8,10 +8,7 @@ import com.almasb.fxgl.entity.Spawns;
 import com.almasb.fxgl.entity.components.IrremovableComponent;
 import com.almasb.fxgl.physics.BoundingShape;
 import com.almasb.fxgl.physics.HitBox;
-import com.almasb.fxgl.physics.PhysicsComponent;
-import com.almasb.fxgl.physics.box2d.dynamics.BodyDef;
-import com.almasb.fxgl.physics.box2d.dynamics.BodyType;
-import com.almasb.fxgl.physics.box2d.dynamics.FixtureDef;
+import com.almasb.fxgl.texture.Texture;
 import javafx.geometry.Point2D;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
@@ -19,6 +16,15 @@ import javafx.scene.shape.Rectangle;
 @SuppressWarnings("unused")
 public class MazelaManFactory implements EntityFactory {
 
+    // Shapes are shared by all entities, since FXGL copies them into each hit box.
+    // Hit boxes are bound to their entity, so they cannot be shared.
+    private static final BoundingShape TILE_SHAPE = BoundingShape.box(20, 20);
+    private static final BoundingShape PILL_SHAPE = BoundingShape.box(9, 9);
+    private static final BoundingShape POWER_PILL_SHAPE = BoundingShape.box(18, 18);
+    private static final Point2D PILL_OFFSET = new Point2D(5, 5);
+    private static final Point2D POWER_PILL_OFFSET = new Point2D(1, 1);
+    private static final double CHERRY_LIFETIME = 10.0;
+
     @Spawns("Background")
     public Entity spawnBackground(SpawnData data) {
         return FXGL.entityBuilder(data)
@@ -39,8 +45,9 @@ public class MazelaManFactory implements EntityFactory {
     public Entity spawnCherry(SpawnData data) {
         return FXGL.entityBuilder(data)
                 .type(EntityType.CHERRY)
-                .viewWithBBox("cherry.png")
-                .collidable()
+                .viewWithBBox(Assets.sprite("cherry.png"))
+                .with(new GridCollidableComponent())
+                .with(new DespawnComponent(CHERRY_LIFETIME))
                 .build();
     }
 
@@ -48,28 +55,34 @@ public class MazelaManFactory implements EntityFactory {
     public Entity spawnPill(SpawnData data) {
         return FXGL.entityBuilder(data)
                 .type(EntityType.PILL)
-                .view("pill.png")
+                .view(Assets.sprite("pill.png"))
                 // Make hit box a little smaller than the tile to fit the visible part of the image
-                .bbox(new HitBox("PILL_HIT_BOX", new Point2D(5, 5), BoundingShape.box(9, 9)))
-                .collidable()
+                .bbox(new HitBox("PILL_HIT_BOX", PILL_OFFSET, PILL_SHAPE))
+                .with(new GridCollidableComponent())
+                .build();
+    }
+
+    @Spawns("PowerPill")
+    public Entity spawnPowerPill(SpawnData data) {
+        // Power pills look like pills, only bigger
+        Texture texture = Assets.sprite("pill.png");
+        texture.setScaleX(2.0);
+        texture.setScaleY(2.0);
+        return FXGL.entityBuilder(data)
+                .type(EntityType.POWER_PILL)
+                .view(texture)
+                .bbox(new HitBox("POWER_PILL_HIT_BOX", POWER_PILL_OFFSET, POWER_PILL_SHAPE))
+                .with(new GridCollidableComponent())
                 .build();
     }
 
     @Spawns("Player")
     public Entity spawnPlayer(SpawnData data) {
-        PhysicsComponent physics = new PhysicsComponent();
-        physics.setFixtureDef(new FixtureDef().friction(0).density(0.1f));
-        BodyDef bd = new BodyDef();
-        bd.setFixedRotation(true);
-        bd.setType(BodyType.DYNAMIC);
-        physics.setBodyDef(bd);
-
+        int player = data.hasKey("player") ? data.<Integer>get("player") : 1;
         return FXGL.entityBuilder(data)
                 .type(EntityType.PLAYER)
-                .bbox(new HitBox(BoundingShape.box(20, 20)))
-                .with(physics)
-                .with(new PlayerComponent(data.getX(), data.getY()))
-                .collidable()
+                .bbox(new HitBox(TILE_SHAPE))
+                .with(new PlayerComponent(data.getX(), data.getY(), player))
                 .build();
     }
 
@@ -77,9 +90,9 @@ public class MazelaManFactory implements EntityFactory {
     public Entity spawnGhost(SpawnData data) {
         return FXGL.entityBuilder(data)
                 .type(EntityType.GHOST)
-                .bbox(new HitBox(BoundingShape.box(20, 20)))
+                .bbox(new HitBox(TILE_SHAPE))
                 .with(new GhostComponent(data.get("name"), data.getX(), data.getY()))
-                .collidable()
+                .with(new GridCollidableComponent())
                 .build();
     }
 
@@ -88,8 +101,6 @@ public class MazelaManFactory implements EntityFactory {
         return FXGL.entityBuilder(data)
                 .type(EntityType.WALL)
                 .bbox(new HitBox(BoundingShape.box(data.<Integer>get("width"), data.<Integer>get("height"))))
-                .with(new PhysicsComponent())
-                .collidable()
                 .build();
     }
 }
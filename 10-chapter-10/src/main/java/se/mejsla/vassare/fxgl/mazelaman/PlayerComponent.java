@@ -3,33 +3,41 @@ package se.mejsla.vassare.fxgl.mazelaman;
 import com.almasb.fxgl.dsl.FXGL;
 import com.almasb.fxgl.entity.SpawnData;
 import com.almasb.fxgl.entity.component.Component;
-import com.almasb.fxgl.physics.PhysicsComponent;
 import com.almasb.fxgl.texture.AnimatedTexture;
 import com.almasb.fxgl.texture.AnimationChannel;
 import javafx.util.Duration;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Direction;
+import se.mejsla.vassare.fxgl.mazelaman.sim.PlayerMotion;
 
+/**
+ * Moves the player along the grid of the maze. Like the ghosts, the player always moves between tile centers,
+ * and a turn that is asked for just before or after a crossing is taken at the crossing.
+ */
 public class PlayerComponent extends Component {
 
-    private static final int SPEED = 150;
+    private static final double SPEED = 150.0;
+    private static final double ANIMATION_SECONDS = 0.5;
 
-    private final double x;
-    private final double y;
+    private double x;
+    private double y;
+    private final int index;
 
     private final AnimatedTexture texture;
 
-    private final AnimationChannel left;
-    private final AnimationChannel right;
-    private final AnimationChannel upDown;
+    private AnimationChannel left;
+    private AnimationChannel right;
+    private AnimationChannel upDown;
+    private double animationScale = 1.0;
 
-    private PhysicsComponent physics;
+    private final PlayerMotion motion;
 
-    public PlayerComponent(double x, double y) {
+    public PlayerComponent(double x, double y, int index) {
         this.x = x;
         this.y = y;
-        left = new AnimationChannel(FXGL.image("player-left.png"), Duration.seconds(0.5), 6);
-        right = new AnimationChannel(FXGL.image("player-right.png"), Duration.seconds(0.5), 6);
-        upDown = new AnimationChannel(FXGL.image("player-up-down.png"), Duration.seconds(0.5), 6);
+        this.index = index;
+        createChannels(animationScale);
         texture = new AnimatedTexture(upDown);
+        motion = new PlayerMotion(x, y);
     }
 
     @Override
@@ -38,36 +46,90 @@ public class PlayerComponent extends Component {
         texture.loopAnimationChannel(upDown);
     }
 
+    /**
+     * Moves the player one game step of {@code tpf} seconds. Called by the app, which steps the game in fixed steps.
+     */
+    public void step(double tpf) {
+        MazelaManApp app = FXGL.getAppCast();
+        motion.advance(SPEED * tpf, app.getMaze());
+        entity.setPosition(motion.getX(), motion.getY());
+        scaleAnimations(app.getClock().getScale());
+        updateView();
+    }
+
     public void left() {
-        physics.setVelocityX(-SPEED);
-        if (texture.getAnimationChannel() != left) {
-            texture.loopAnimationChannel(left);
-        }
+        motion.turn(Direction.LEFT);
     }
 
     public void right() {
-        physics.setVelocityX(SPEED);
-        if (texture.getAnimationChannel() != right) {
-            texture.loopAnimationChannel(right);
-        }
+        motion.turn(Direction.RIGHT);
     }
 
     public void up() {
-        physics.setVelocityY(-SPEED);
-        if (texture.getAnimationChannel() != upDown) {
-            texture.loopAnimationChannel(upDown);
-        }
+        motion.turn(Direction.UP);
     }
 
     public void down() {
-        physics.setVelocityY(SPEED);
-        if (texture.getAnimationChannel() != upDown) {
+        motion.turn(Direction.DOWN);
+    }
+
+    private void createChannels(double scale) {
+        Duration duration = Duration.seconds(ANIMATION_SECONDS / scale);
+        left = new AnimationChannel(Assets.image("player-left.png"), duration, 6);
+        right = new AnimationChannel(Assets.image("player-right.png"), duration, 6);
+        upDown = new AnimationChannel(Assets.image("player-up-down.png"), duration, 6);
+    }
+
+    // The texture animates in real time, so the channels are made faster or slower to follow the time scale
+    private void scaleAnimations(double scale) {
+        if (scale != animationScale) {
+            animationScale = scale;
+            createChannels(scale);
+            // The view switches to the channel for the direction the player is facing
             texture.loopAnimationChannel(upDown);
         }
     }
 
+    private void updateView() {
+        AnimationChannel channel = texture.getAnimationChannel();
+        if (motion.getFacing() == Direction.LEFT) {
+            channel = left;
+        } else if (motion.getFacing() == Direction.RIGHT) {
+            channel = right;
+        } else if (motion.getFacing() != Direction.NONE) {
+            channel = upDown;
+        }
+
+        if (channel != texture.getAnimationChannel()) {
+            texture.loopAnimationChannel(channel);
+        }
+    }
+
+    /**
+     * Returns 1 for the first player and 2 for the second player.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Direction getDirection() {
+        return motion.getFacing();
+    }
+
+    public PlayerMotion getMotion() {
+        return motion;
+    }
+
+    /**
+     * Moves the spawn point of this player, which is where it goes when it respawns.
+     */
+    public void setSpawnPoint(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
     public void respawn() {
         entity.removeFromWorld();
-        FXGL.spawn("Player", new SpawnData(x, y));
+        FXGL.<MazelaManApp>getAppCast().getSpawnTemplates().spawn("Player", new SpawnData(x, y).put("player", index));
     }
 }
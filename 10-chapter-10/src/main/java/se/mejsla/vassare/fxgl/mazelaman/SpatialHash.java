@@ -0,0 +1,132 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid of square cells, hashed into a fixed number of buckets. Items are placed in the cell of their
+ * center, and only move between buckets when they change cell. Items must not be larger than a cell, so that
+ * everything that can overlap an item is found in the cell of the item or in one of the eight cells around it.
+ * Different cells may share a bucket, so a query can return items that are not close. Callers should always
+ * do an exact overlap test on the result.
+ */
+public final class SpatialHash<T> {
+
+    private final double cellSize;
+    private final int mask;
+    private final List<List<Entry<T>>> buckets;
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+    private final int[] queryBuckets = new int[9];
+
+    public SpatialHash(double cellSize, int bucketCount) {
+        if (Integer.bitCount(bucketCount) != 1) {
+            throw new IllegalArgumentException("Bucket count must be a power of two: " + bucketCount);
+        }
+        this.cellSize = cellSize;
+        this.mask = bucketCount - 1;
+        this.buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Inserts {@code item} with its center at ({@code x}, {@code y}), or moves it there if it is already inserted.
+     * Returns true if the item changed bucket.
+     */
+    public boolean update(T item, double x, double y) {
+        int bucket = bucket(cell(x), cell(y));
+        Entry<T> entry = entries.get(item);
+        if (entry == null) {
+            entry = new Entry<>(item);
+            entries.put(item, entry);
+        } else if (entry.bucket == bucket) {
+            return false;
+        } else {
+            removeFromBucket(entry);
+        }
+        entry.bucket = bucket;
+        entry.index = buckets.get(bucket).size();
+        buckets.get(bucket).add(entry);
+        return true;
+    }
+
+    public void remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry != null) {
+            removeFromBucket(entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        for (List<Entry<T>> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Adds all items in the cell of ({@code x}, {@code y}) and its neighbouring cells to {@code result}.
+     */
+    public void query(double x, double y, List<T> result) {
+        int cx = cell(x);
+        int cy = cell(y);
+        int count = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int bucket = bucket(cx + dx, cy + dy);
+                if (!contains(queryBuckets, count, bucket)) {
+                    queryBuckets[count++] = bucket;
+                    for (Entry<T> entry : buckets.get(bucket)) {
+                        result.add(entry.item);
+                    }
+                }
+            }
+        }
+    }
+
+    private void removeFromBucket(Entry<T> entry) {
+        // Swap with the last entry to avoid shifting the rest of the bucket
+        List<Entry<T>> bucket = buckets.get(entry.bucket);
+        Entry<T> last = bucket.remove(bucket.size() - 1);
+        if (last != entry) {
+            bucket.set(entry.index, last);
+            last.index = entry.index;
+        }
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private int bucket(int cx, int cy) {
+        int hash = cx * 73856093 ^ cy * 19349663;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Entry<T> {
+
+        private final T item;
+        private int bucket;
+        private int index;
+
+        private Entry(T item) {
+            this.item = item;
+        }
+    }
+}
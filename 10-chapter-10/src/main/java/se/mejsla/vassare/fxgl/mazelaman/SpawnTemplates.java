@@ -0,0 +1,118 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.Entity;
+import com.almasb.fxgl.entity.EntityFactory;
+import com.almasb.fxgl.entity.SpawnData;
+import com.almasb.fxgl.entity.Spawns;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelObject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spawns entities with the {@link Spawns} methods of an entity factory. The methods are looked up once, when
+ * the templates are created, instead of on every spawn. Whole lists of level objects can be created in one go,
+ * and added to the world with a single call.
+ */
+public final class SpawnTemplates {
+
+    @FunctionalInterface
+    public interface Template {
+
+        Entity create(SpawnData data);
+    }
+
+    private static final MethodType SPAWN_TYPE = MethodType.methodType(Entity.class, SpawnData.class);
+
+    private final Map<String, Template> templates = new HashMap<>();
+
+    public SpawnTemplates(EntityFactory factory) {
+        for (Method method : factory.getClass().getMethods()) {
+            Spawns spawns = method.getAnnotation(Spawns.class);
+            if (spawns != null) {
+                Template template = template(factory, method);
+                for (String name : spawns.value().split(",")) {
+                    templates.put(name.trim(), template);
+                }
+            }
+        }
+    }
+
+    private static Template template(EntityFactory factory, Method method) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method).bindTo(factory).asType(SPAWN_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access spawn method: " + method, e);
+        }
+        return data -> {
+            try {
+                return (Entity) handle.invokeExact(data);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to spawn with " + method, e);
+            }
+        };
+    }
+
+    /**
+     * Creates an entity from template {@code name}, without adding it to the world.
+     */
+    public Entity create(String name, SpawnData data) {
+        Template template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("No spawn template for: " + name);
+        }
+        return template.create(data);
+    }
+
+    /**
+     * Creates an entity for a level object, using the object type as template name.
+     */
+    public Entity create(LevelObject object) {
+        return create(object.getType(), spawnData(object));
+    }
+
+    public Entity spawn(String name, SpawnData data) {
+        Entity entity = create(name, data);
+        FXGL.getGameWorld().addEntity(entity);
+        return entity;
+    }
+
+    /**
+     * Creates one entity for each level object, using the object type as template name.
+     * Calls {@code onCreated} after each entity, so that a caller can show the progress.
+     */
+    public List<Entity> createAll(List<LevelObject> objects, Runnable onCreated) {
+        List<Entity> entities = new ArrayList<>(objects.size());
+        for (LevelObject object : objects) {
+            entities.add(create(object));
+            onCreated.run();
+        }
+        return entities;
+    }
+
+    public List<Entity> spawnAll(List<LevelObject> objects) {
+        List<Entity> entities = createAll(objects, () -> { });
+        FXGL.getGameWorld().addEntities(entities.toArray(new Entity[0]));
+        return entities;
+    }
+
+    // The same data that the TMX level loader puts in the spawn data
+    private static SpawnData spawnData(LevelObject object) {
+        return new SpawnData(object.getX(), object.getY())
+                .put("id", object.getId())
+                .put("type", object.getType())
+                .put("name", object.getName())
+                .put("width", (int) object.getWidth())
+                .put("height", (int) object.getHeight());
+    }
+}
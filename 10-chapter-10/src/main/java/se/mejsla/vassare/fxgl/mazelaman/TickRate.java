@@ -0,0 +1,67 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import java.util.Objects;
+
+/**
+ * How often a {@link TickScheduler.Ticker} wants to be ticked: every Nth frame, or every N milliseconds of game time.
+ */
+public final class TickRate {
+
+    private static final TickRate EVERY_FRAME = new TickRate(1, 0);
+
+    private final int frames;
+    private final long millis;
+
+    private TickRate(int frames, long millis) {
+        this.frames = frames;
+        this.millis = millis;
+    }
+
+    public static TickRate everyFrame() {
+        return EVERY_FRAME;
+    }
+
+    public static TickRate everyFrames(int frames) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("Frames must be positive: " + frames);
+        }
+        return frames == 1 ? EVERY_FRAME : new TickRate(frames, 0);
+    }
+
+    public static TickRate everyMillis(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Millis must be positive: " + millis);
+        }
+        return new TickRate(0, millis);
+    }
+
+    boolean isDue(int framesSince, double secondsSince) {
+        if (frames > 0) {
+            return framesSince >= frames;
+        }
+        // Allow for rounding errors when adding up frame times
+        return secondsSince * 1000.0 >= millis - 1e-6;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TickRate that = (TickRate) o;
+        return frames == that.frames && millis == that.millis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(frames, millis);
+    }
+
+    @Override
+    public String toString() {
+        return frames > 0 ? "every " + frames + " frames" : "every " + millis + " ms";
+    }
+}
@@ -0,0 +1,84 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Ticks components that do not need to run every frame. Tickers are grouped in buckets by {@link TickRate},
+ * and a frame only costs one check per bucket, however many tickers there are. Buckets that are not due
+ * are skipped as a whole.
+ */
+public final class TickScheduler {
+
+    @FunctionalInterface
+    public interface Ticker {
+
+        /**
+         * Called when the ticker is due, with the number of frames and seconds of game time since the last tick.
+         */
+        void tick(int frames, double seconds);
+    }
+
+    private final Map<TickRate, Bucket> buckets = new LinkedHashMap<>();
+    private final List<Bucket> dueBuckets = new ArrayList<>();
+
+    public void register(TickRate rate, Ticker ticker) {
+        buckets.computeIfAbsent(rate, Bucket::new).tickers.add(ticker);
+    }
+
+    public void unregister(Ticker ticker) {
+        buckets.values().removeIf(bucket -> bucket.tickers.remove(ticker) && bucket.tickers.isEmpty());
+    }
+
+    public void update(double tpf) {
+        // Collect the due buckets first, since tickers may register or unregister while ticking
+        for (Bucket bucket : buckets.values()) {
+            bucket.framesSince++;
+            bucket.secondsSince += tpf;
+            if (bucket.rate.isDue(bucket.framesSince, bucket.secondsSince)) {
+                dueBuckets.add(bucket);
+            }
+        }
+        for (Bucket bucket : dueBuckets) {
+            int frames = bucket.framesSince;
+            double seconds = bucket.secondsSince;
+            bucket.framesSince = 0;
+            bucket.secondsSince = 0.0;
+            for (Ticker ticker : bucket.tickers) {
+                ticker.tick(frames, seconds);
+            }
+        }
+        dueBuckets.clear();
+    }
+
+    /**
+     * Unregisters all tickers.
+     */
+    public void clear() {
+        buckets.clear();
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    public int getTickerCount() {
+        return buckets.values().stream().mapToInt(bucket -> bucket.tickers.size()).sum();
+    }
+
+    private static final class Bucket {
+
+        private final TickRate rate;
+        // Iterating takes a snapshot, so a ticker may unregister itself when ticked
+        private final List<Ticker> tickers = new CopyOnWriteArrayList<>();
+        private int framesSince;
+        private double secondsSince;
+
+        private Bucket(TickRate rate) {
+            this.rate = rate;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package se.mejsla.vassare.fxgl.mazelaman;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.Entity;
+import com.almasb.fxgl.entity.EntityWorldListener;
+import com.almasb.fxgl.entity.GameWorld;
+import com.almasb.fxgl.entity.SpawnData;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Direction;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GhostModeScheduler;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GhostMotion;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelObject;
+import se.mejsla.vassare.fxgl.mazelaman.sim.PlayerMotion;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Stateful;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The dynamic state of the level being played in the app, written to and read from an array of words like the
+ * state of the headless {@link se.mejsla.vassare.fxgl.mazelaman.sim.Game}. The state holds the score and lives of
+ * both players, the ghost modes, the players, the ghosts, the cherries and the pills that have been eaten.
+ * Reading a state removes and adds entities as needed, so that the world looks like it did.
+ * <p>
+ * The entities that the state is made of are kept in arrays, with one slot per player, ghost, cherry spawn point and
+ * pill of the level. The slots are kept up to date by listening to the world, until {@link #detach} is called.
+ * <p>
+ * The state of the random generator that ghosts and cherry spawn points use is part of the state, so a game that
+ * goes on from a restored state plays out like it did the first time, given the same input.
+ */
+public final class WorldState implements Stateful, EntityWorldListener {
+
+    private static final int FRAME = 0;
+    private static final int LEVEL = 1;
+    private static final int SCORE = 2;
+    private static final int LIVES = 3;
+    private static final int SCORE2 = 4;
+    private static final int LIVES2 = 5;
+    private static final int PILLS = 6;
+    private static final int GHOST_PHASE = 7;
+    private static final int GHOST_PHASE_TIME = 8;
+    private static final int GHOST_FRIGHTENED_TIME = 9;
+    private static final int GHOST_FRIGHTENINGS = 10;
+    private static final int RANDOM = 11;
+    private static final int HEADER_SIZE = 12;
+    private static final int PLAYERS = 2;
+    private static final int PLAYER_SIZE = 6;
+    private static final int GHOST_SIZE = 5;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final MazelaManApp app;
+    private final int level;
+    private final LevelObject player;
+    private final List<LevelObject> ghosts;
+    private final List<LevelObject> cherrySpawnPoints;
+    private final List<LevelObject> pills = new ArrayList<>();
+    private final Entity[] playerEntities = new Entity[PLAYERS];
+    private final Entity[] ghostEntities;
+    private final Entity[] cherryEntities;
+    private final Entity[] pillEntities;
+    private long frame;
+
+    /**
+     * Creates the state of level {@code levelData}, which must be the level in the world now, and starts listening
+     * to the world.
+     */
+    public WorldState(MazelaManApp app, LevelData levelData) {
+        this.app = app;
+        this.level = FXGL.geti("level");
+        this.player = levelData.getObjects("Player").get(0);
+        this.ghosts = levelData.getObjects("Ghost");
+        this.cherrySpawnPoints = levelData.getObjects("CherrySpawnPoint");
+        pills.addAll(levelData.getObjects("Pill"));
+        pills.addAll(levelData.getObjects("PowerPill"));
+
+        // The pills are only removed and added, never moved, so they can be found once and kept
+        GameWorld world = FXGL.getGameWorld();
+        pillEntities = new Entity[pills.size()];
+        List<Entity> pillsInWorld = world.getEntitiesByType(EntityType.PILL, EntityType.POWER_PILL);
+        for (int i = 0; i < pillEntities.length; i++) {
+            pillEntities[i] = findAt(pillsInWorld, pills.get(i).getX(), pills.get(i).getY());
+        }
+        ghostEntities = new Entity[ghosts.size()];
+        cherryEntities = new Entity[cherrySpawnPoints.size()];
+        world.getEntitiesByType(EntityType.PLAYER, EntityType.GHOST, EntityType.CHERRY).forEach(this::onEntityAdded);
+        world.addWorldListener(this);
+    }
+
+    /**
+     * Stops listening to the world, which the app calls when it no longer uses this state.
+     */
+    public void detach() {
+        FXGL.getGameWorld().removeWorldListener(this);
+    }
+
+    @Override
+    public void onEntityAdded(Entity entity) {
+        int slot = slotOf(entity);
+        if (slot >= 0) {
+            slotsOf(entity)[slot] = entity;
+        }
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entity) {
+        int slot = slotOf(entity);
+        if (slot >= 0 && slotsOf(entity)[slot] == entity) {
+            slotsOf(entity)[slot] = null;
+        }
+    }
+
+    // The array that keeps entities of the same type as entity, or null if this state does not keep them
+    private Entity[] slotsOf(Entity entity) {
+        if (entity.isType(EntityType.PLAYER)) {
+            return playerEntities;
+        } else if (entity.isType(EntityType.GHOST)) {
+            return ghostEntities;
+        } else if (entity.isType(EntityType.CHERRY)) {
+            return cherryEntities;
+        }
+        return null;
+    }
+
+    // The slot of entity in its array, or -1 if it has none
+    private int slotOf(Entity entity) {
+        if (entity.isType(EntityType.PLAYER)) {
+            int index = entity.getComponent(PlayerComponent.class).getIndex() - 1;
+            return index < PLAYERS ? index : -1;
+        } else if (entity.isType(EntityType.GHOST)) {
+            String name = entity.getComponent(GhostComponent.class).getName();
+            for (int i = 0; i < ghosts.size(); i++) {
+                if (ghosts.get(i).getName().equals(name)) {
+                    return i;
+                }
+            }
+        } else if (entity.isType(EntityType.CHERRY)) {
+            for (int i = 0; i < cherrySpawnPoints.size(); i++) {
+                LevelObject cherrySpawnPoint = cherrySpawnPoints.get(i);
+                if (cherrySpawnPoint.getX() == entity.getX() && cherrySpawnPoint.getY() == entity.getY()) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the level that {@code state} is from.
+     */
+    public static int levelOf(long[] state) {
+        return (int) state[LEVEL];
+    }
+
+    @Override
+    public int stateSize() {
+        return HEADER_SIZE + PLAYERS * PLAYER_SIZE + GHOST_SIZE * ghosts.size() + cherrySpawnPoints.size()
+                + (pills.size() + 63) / 64;
+    }
+
+    /**
+     * Returns the number of words in {@code state}, or -1 if it is not from this level.
+     */
+    @Override
+    public int stateSize(long[] state) {
+        return state.length > LEVEL && state[LEVEL] == level ? stateSize() : -1;
+    }
+
+    /**
+     * Counts one more step of the game, which the app calls after each step.
+     */
+    public void nextFrame() {
+        frame++;
+    }
+
+    @Override
+    public long getFrame() {
+        return frame;
+    }
+
+    @Override
+    public void writeState(long[] state) {
+        GhostModeScheduler ghostModes = app.getGhostModes();
+        state[FRAME] = frame;
+        state[LEVEL] = level;
+        state[SCORE] = FXGL.geti("score");
+        state[LIVES] = FXGL.geti("lives");
+        state[SCORE2] = FXGL.geti("score2");
+        state[LIVES2] = FXGL.geti("lives2");
+        state[PILLS] = FXGL.geti("pills");
+        state[GHOST_PHASE] = ghostModes.getPhase();
+        state[GHOST_PHASE_TIME] = Double.doubleToRawLongBits(ghostModes.getPhaseTime());
+        state[GHOST_FRIGHTENED_TIME] = Double.doubleToRawLongBits(ghostModes.getFrightenedTime());
+        state[GHOST_FRIGHTENINGS] = ghostModes.getFrightenings();
+        state[RANDOM] = app.getRandom().getState();
+        Arrays.fill(state, HEADER_SIZE, state.length, 0L);
+
+        int i = HEADER_SIZE;
+        for (Entity entity : playerEntities) {
+            if (entity != null) {
+                PlayerMotion motion = entity.getComponent(PlayerComponent.class).getMotion();
+                state[i] = 1;
+                state[i + 1] = Double.doubleToRawLongBits(motion.getX());
+                state[i + 2] = Double.doubleToRawLongBits(motion.getY());
+                state[i + 3] = motion.getDirection().ordinal();
+                state[i + 4] = motion.getWanted().ordinal();
+                state[i + 5] = motion.getFacing().ordinal();
+            }
+            i += PLAYER_SIZE;
+        }
+        for (Entity entity : ghostEntities) {
+            if (entity != null) {
+                GhostMotion motion = entity.getComponent(GhostComponent.class).getMotion();
+                state[i] = 1;
+                state[i + 1] = Double.doubleToRawLongBits(motion.getX());
+                state[i + 2] = Double.doubleToRawLongBits(motion.getY());
+                state[i + 3] = motion.getDirection().ordinal();
+                state[i + 4] = motion.getEatenIn();
+            }
+            i += GHOST_SIZE;
+        }
+        for (Entity cherry : cherryEntities) {
+            double timeLeft = cherry != null ? cherry.getComponent(DespawnComponent.class).getTimeLeft() : 0.0;
+            state[i++] = Double.doubleToRawLongBits(timeLeft);
+        }
+        for (int p = 0; p < pillEntities.length; p++) {
+            if (pillEntities[p] == null || !pillEntities[p].isActive()) {
+                state[i + p / 64] |= 1L << (p % 64);
+            }
+        }
+    }
+
+    /**
+     * Restores a state written by {@link #writeState} on the same level.
+     */
+    @Override
+    public void readState(long[] state) {
+        if (state[LEVEL] != level) {
+            throw new IllegalArgumentException("State is from level " + state[LEVEL] + ", not " + level);
+        }
+        GameWorld world = FXGL.getGameWorld();
+        SpawnTemplates templates = app.getSpawnTemplates();
+        frame = state[FRAME];
+        FXGL.set("score", (int) state[SCORE]);
+        FXGL.set("lives", (int) state[LIVES]);
+        FXGL.set("score2", (int) state[SCORE2]);
+        FXGL.set("lives2", (int) state[LIVES2]);
+        FXGL.set("pills", (int) state[PILLS]);
+        app.getGhostModes().restore((int) state[GHOST_PHASE],
+                Double.longBitsToDouble(state[GHOST_PHASE_TIME]),
+                Double.longBitsToDouble(state[GHOST_FRIGHTENED_TIME]),
+                (int) state[GHOST_FRIGHTENINGS]);
+        app.getRandom().setState(state[RANDOM]);
+
+        int i = HEADER_SIZE;
+        for (int p = 1; p <= PLAYERS; p++) {
+            Entity entity = playerEntities[p - 1];
+            if (state[i] == 0 && entity != null) {
+                entity.removeFromWorld();
+            } else if (state[i] != 0) {
+                if (entity == null) {
+                    entity = templates.spawn("Player", new SpawnData(player.getX(), player.getY()).put("player", p));
+                }
+                PlayerMotion motion = entity.getComponent(PlayerComponent.class).getMotion();
+                motion.restore(Double.longBitsToDouble(state[i + 1]), Double.longBitsToDouble(state[i + 2]),
+                        DIRECTIONS[(int) state[i + 3]], DIRECTIONS[(int) state[i + 4]],
+                        DIRECTIONS[(int) state[i + 5]]);
+                entity.setPosition(motion.getX(), motion.getY());
+            }
+            i += PLAYER_SIZE;
+        }
+        for (int g = 0; g < ghostEntities.length; g++) {
+            LevelObject ghost = ghosts.get(g);
+            Entity entity = ghostEntities[g];
+            if (state[i] == 0 && entity != null) {
+                entity.removeFromWorld();
+            } else if (state[i] != 0) {
+                if (entity == null) {
+                    entity = templates.spawn("Ghost",
+                            new SpawnData(ghost.getX(), ghost.getY()).put("name", ghost.getName()));
+                }
+                GhostMotion motion = entity.getComponent(GhostComponent.class).getMotion();
+                motion.restore(Double.longBitsToDouble(state[i + 1]), Double.longBitsToDouble(state[i + 2]),
+                        DIRECTIONS[(int) state[i + 3]], (int) state[i + 4]);
+                entity.setPosition(motion.getX(), motion.getY());
+                app.getCollisionGrid().moved(entity);
+            }
+            i += GHOST_SIZE;
+        }
+        for (int c = 0; c < cherryEntities.length; c++) {
+            LevelObject cherrySpawnPoint = cherrySpawnPoints.get(c);
+            Entity cherry = cherryEntities[c];
+            double timeLeft = Double.longBitsToDouble(state[i++]);
+            if (timeLeft == 0.0 && cherry != null) {
+                cherry.removeFromWorld();
+            } else if (timeLeft > 0.0) {
+                if (cherry == null) {
+                    cherry = templates.spawn("Cherry",
+                            new SpawnData(cherrySpawnPoint.getX(), cherrySpawnPoint.getY()));
+                }
+                cherry.getComponent(DespawnComponent.class).setTimeLeft(timeLeft);
+            }
+        }
+        for (int p = 0; p < pillEntities.length; p++) {
+            boolean eaten = (state[i + p / 64] & (1L << (p % 64))) != 0;
+            boolean inWorld = pillEntities[p] != null && pillEntities[p].isActive();
+            if (eaten && inWorld) {
+                pillEntities[p].removeFromWorld();
+            } else if (!eaten && !inWorld) {
+                pillEntities[p] = templates.create(pills.get(p));
+                world.addEntity(pillEntities[p]);
+            }
+        }
+    }
+
+    private static Entity findAt(List<Entity> entities, double x, double y) {
+        for (Entity entity : entities) {
+            if (entity.getX() == x && entity.getY() == y) {
+                return entity;
+            }
+        }
+        return null;
+    }
+}
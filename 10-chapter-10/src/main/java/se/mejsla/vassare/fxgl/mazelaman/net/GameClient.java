@@ -0,0 +1,168 @@
+package se.mejsla.vassare.fxgl.mazelaman.net;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Connects to a {@link GameServer}, and keeps a copy of the server's game state. The state is read on a thread of
+ * its own, and copied into a local game with {@link #poll}, which is only used to show the game. Game rules are
+ * never run on the client.
+ * <p>
+ * The main method plays a game with random input without showing it, and prints the bandwidth used.
+ * <p>
+ * Usage: GameClient [host] [port]
+ */
+public final class GameClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final long[] state;
+    private final long[] received;
+    private boolean fresh;
+    private volatile boolean closed;
+    private volatile long bytes;
+    private volatile long messages;
+    private int lastAction = -1;
+
+    private GameClient(Socket socket, List<LevelData> levels) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = socket.getOutputStream();
+        this.state = new long[Game.maxStateSize(levels)];
+        this.received = new long[state.length];
+        int serverSize = in.readInt();
+        if (serverSize != state.length) {
+            throw new IOException("Server has other levels, state size " + serverSize + " != " + state.length);
+        }
+    }
+
+    /**
+     * Connects to a server that plays {@code levels}, and starts reading game states.
+     */
+    public static GameClient connect(String host, int port, List<LevelData> levels) throws IOException {
+        Socket socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        GameClient client;
+        try {
+            client = new GameClient(socket, levels);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        Thread reader = new Thread(client::readStates, "game-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+        return client;
+    }
+
+    private void readStates() {
+        try {
+            while (true) {
+                int length = in.readInt();
+                // Apply the delta to a copy that only this thread uses, so poll never waits for the network
+                StateDelta.read(in, received);
+                synchronized (this) {
+                    System.arraycopy(received, 0, state, 0, state.length);
+                    fresh = true;
+                }
+                bytes += Integer.BYTES + length;
+                messages++;
+            }
+        } catch (EOFException e) {
+            // The server closed the connection, which it does when the game is over
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Lost connection to server: " + e.getMessage());
+            }
+        } finally {
+            closed = true;
+        }
+    }
+
+    /**
+     * Copies the latest state from the server into {@code mirror}, if it has changed since the last call.
+     *
+     * @return True if {@code mirror} was updated.
+     */
+    public synchronized boolean poll(Game mirror) {
+        if (!fresh) {
+            return false;
+        }
+        mirror.readState(state);
+        fresh = false;
+        return true;
+    }
+
+    /**
+     * Sends {@code action} to the server, if it differs from the last action sent.
+     */
+    public void send(int action) {
+        if (action == lastAction || closed) {
+            return;
+        }
+        try {
+            out.write(action);
+            out.flush();
+            lastAction = action;
+        } catch (IOException e) {
+            closed = true;
+        }
+    }
+
+    /**
+     * Returns true if the connection is closed, for example because the game is over.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long getBytesReceived() {
+        return bytes;
+    }
+
+    public long getMessagesReceived() {
+        return messages;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+        List<LevelData> levels = LevelData.loadAll();
+        Game mirror = new Game(levels);
+        Random input = new Random();
+        long start = System.nanoTime();
+        try (GameClient client = connect(host, port, levels)) {
+            int action = Game.NONE;
+            while (!client.isClosed()) {
+                if (client.poll(mirror) && input.nextInt(30) == 0) {
+                    action = input.nextInt(5);
+                }
+                client.send(action);
+                Thread.sleep(1);
+            }
+            client.poll(mirror);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Received %d states, %d bytes in %.1f s: %.0f bytes/s, %.1f bytes per state%n",
+                    client.getMessagesReceived(), client.getBytesReceived(), seconds,
+                    client.getBytesReceived() / seconds,
+                    (double) client.getBytesReceived() / Math.max(1, client.getMessagesReceived()));
+        }
+        System.out.println(mirror);
+    }
+}
@@ -0,0 +1,446 @@
+package se.mejsla.vassare.fxgl.mazelaman.net;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs headless games for network clients. The server is authoritative: each client gets its own match, which the
+ * server steps 60 times per second with the last action the client sent. After each step, the server sends the
+ * changes to the game state as a {@link StateDelta}, so the client only has to show the game.
+ * <p>
+ * One server runs many matches. The matches are spread over a few shards, by default one per core. Each shard is
+ * a thread that divides the tick into time slots, and ticks the matches in one slot each time it wakes up. Spreading
+ * the matches over the slots spreads the work over the tick, so that the last match in a slot is not ticked much
+ * later than the first, while the thread only sleeps once per slot. All sockets are non-blocking, and one thread reads
+ * the actions of all clients, so the number of threads does not grow with the number of matches. The matches share
+ * the level data, which is loaded once. If a client cannot keep up, its match goes on, but no delta is sent until
+ * the last one has been written. The next delta then covers all the missed ticks.
+ * <p>
+ * The protocol is simple. When a client connects, the server sends the size of the state array as an int, so that
+ * a client with other levels can fail early. Then it sends one message per step: the length of the delta as an int,
+ * followed by the delta. The client sends one byte with the new action whenever it changes. The server closes the
+ * connection when the game is over.
+ * <p>
+ * Usage: GameServer [port] [shards]
+ */
+public final class GameServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 4747;
+
+    private static final long TICK_NANOS = Math.round(Game.TPF * 1e9);
+    private static final int SLOTS = 16;
+    private static final long SLOT_NANOS = TICK_NANOS / SLOTS;
+    private static final long MAX_LATE_TICKS = 10;
+    private static final long REPORT_SECONDS = 5;
+
+    private final List<LevelData> levels;
+    private final int stateSize;
+    private final Shard[] shards;
+    private final Random seeds = new Random();
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    public GameServer(List<LevelData> levels, int shardCount) throws IOException {
+        this.levels = levels;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.stateSize = Game.maxStateSize(levels);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Starts accepting clients on {@code port}, or on any free port if {@code port} is 0.
+     *
+     * @return The port the server listens on.
+     */
+    public int start(int port) throws IOException {
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        for (int i = 0; i < shards.length; i++) {
+            startThread(shards[i], "game-server-shard-" + i);
+        }
+        startThread(this::select, "game-server-io");
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private static void startThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void select() {
+        ByteBuffer input = ByteBuffer.allocate(64);
+        try (selector; serverChannel) {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        ((Match) key.attachment()).readAction(input);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Server stopped: " + e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Match match = new Match(channel, seeds.nextLong());
+        channel.register(selector, SelectionKey.OP_READ, match);
+        Shard emptiest = shards[0];
+        for (Shard shard : shards) {
+            if (shard.load.get() < emptiest.load.get()) {
+                emptiest = shard;
+            }
+        }
+        emptiest.add(match);
+    }
+
+    /**
+     * Returns the number of matches that are running now.
+     */
+    public int getMatchCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.load.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the total number of bytes sent to all clients.
+     */
+    public long getBytesSent() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += shard.bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of deltas sent to all clients.
+     */
+    public long getDeltasSent() {
+        long deltas = 0;
+        for (Shard shard : shards) {
+            deltas += shard.deltas;
+        }
+        return deltas;
+    }
+
+    /**
+     * Returns the number of ticks that matches have skipped, because they had fallen too far behind.
+     */
+    public long getSkippedTicks() {
+        long skipped = 0;
+        for (Shard shard : shards) {
+            skipped += shard.skipped;
+        }
+        return skipped;
+    }
+
+    /**
+     * Returns how late the matches have been ticked since the last call, and starts counting anew. Each shard hands
+     * over its histogram between two slots, so this waits for up to a slot.
+     */
+    public synchronized LatencyHistogram takeJitter() {
+        JitterSwap[] swaps = new JitterSwap[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            swaps[i] = new JitterSwap();
+            shards[i].requestJitter(swaps[i]);
+        }
+        LatencyHistogram total = new LatencyHistogram();
+        for (JitterSwap swap : swaps) {
+            total.add(swap.taken.join());
+        }
+        return total;
+    }
+
+    // A new histogram for a shard to record into, and the one it has recorded into so far once it has swapped them
+    private static final class JitterSwap {
+
+        private final LatencyHistogram fresh = new LatencyHistogram();
+        private final CompletableFuture<LatencyHistogram> taken = new CompletableFuture<>();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        // The I/O thread closes the selector and the server socket when it wakes up
+        selector.wakeup();
+    }
+
+    private final class Shard implements Runnable {
+
+        private final Queue<Match> added = new ConcurrentLinkedQueue<>();
+        private final List<List<Match>> slots = new ArrayList<>();
+        private final AtomicInteger load = new AtomicInteger();
+        private final AtomicReference<JitterSwap> jitterSwap = new AtomicReference<>();
+
+        // Only used by the shard thread while it runs, and by the thread that swaps it out after that
+        private LatencyHistogram jitter = new LatencyHistogram();
+        private volatile boolean stopped;
+
+        // Only written by the shard thread
+        private volatile long bytes;
+        private volatile long deltas;
+        private volatile long skipped;
+
+        private Shard() {
+            for (int i = 0; i < SLOTS; i++) {
+                slots.add(new ArrayList<>());
+            }
+        }
+
+        private void add(Match match) {
+            load.incrementAndGet();
+            added.add(match);
+        }
+
+        // The histogram is only swapped by the shard thread, so that no tick is recorded into one that is being read
+        private void requestJitter(JitterSwap swap) {
+            jitterSwap.set(swap);
+            if (stopped) {
+                swapJitter();
+            }
+        }
+
+        private void swapJitter() {
+            JitterSwap swap = jitterSwap.getAndSet(null);
+            if (swap != null) {
+                LatencyHistogram taken = jitter;
+                jitter = swap.fresh;
+                swap.taken.complete(taken);
+            }
+        }
+
+        @Override
+        public void run() {
+            long next = System.nanoTime();
+            int slot = 0;
+            while (running) {
+                long wait;
+                while ((wait = next - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                // A shard that has fallen far behind skips ticks, rather than running them back to back
+                long late = System.nanoTime() - next;
+                if (late > MAX_LATE_TICKS * TICK_NANOS) {
+                    skipped += late / TICK_NANOS * load.get();
+                    next += late / TICK_NANOS * TICK_NANOS;
+                }
+
+                for (Match match = added.poll(); match != null; match = added.poll()) {
+                    emptiestSlot().add(match);
+                }
+                swapJitter();
+                List<Match> matches = slots.get(slot);
+                for (Match match : matches) {
+                    jitter.record(System.nanoTime() - next);
+                    int sent = match.tick();
+                    if (sent > 0) {
+                        bytes += sent;
+                        deltas++;
+                    }
+                }
+                int before = matches.size();
+                if (matches.removeIf(Match::isClosed)) {
+                    load.addAndGet(matches.size() - before);
+                }
+                slot = (slot + 1) % SLOTS;
+                next += SLOT_NANOS;
+            }
+            slots.forEach(matches -> matches.forEach(Match::close));
+            stopped = true;
+            swapJitter();
+        }
+
+        private List<Match> emptiestSlot() {
+            List<Match> emptiest = slots.get(0);
+            for (List<Match> matches : slots) {
+                if (matches.size() < emptiest.size()) {
+                    emptiest = matches;
+                }
+            }
+            return emptiest;
+        }
+    }
+
+    private final class Match {
+
+        private final SocketChannel channel;
+        private final Game game = new Game(levels);
+        private final long[] sent = new long[stateSize];
+        private final long[] current = new long[stateSize];
+        private final Frame frame = new Frame();
+        private final DataOutputStream out = new DataOutputStream(frame);
+        private ByteBuffer pending;
+        private long ticks;
+        private volatile int action = Game.NONE;
+        private volatile boolean closed;
+
+        private Match(SocketChannel channel, long seed) {
+            this.channel = channel;
+            game.reset(seed);
+        }
+
+        // Called on the I/O thread, only the last action read counts
+        private void readAction(ByteBuffer input) {
+            try {
+                input.clear();
+                int read = channel.read(input);
+                if (read < 0) {
+                    close();
+                } else if (read > 0 && input.get(read - 1) <= Game.DOWN) {
+                    action = input.get(read - 1);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Steps the game and sends the changes, if the client has received the last ones.
+         *
+         * @return The number of bytes sent, or 0 if no delta was sent.
+         */
+        private int tick() {
+            if (closed) {
+                return 0;
+            }
+            try {
+                // The first message is the full state, as the client starts from zeros
+                if (ticks > 0 && !game.isOver()) {
+                    game.step(action);
+                }
+                ticks++;
+                if (pending != null && !flush()) {
+                    return 0;
+                }
+
+                frame.reset();
+                if (ticks == 1) {
+                    out.writeInt(stateSize);
+                }
+                int start = frame.size();
+                out.writeInt(0);
+                game.writeVisibleState(current);
+                StateDelta.write(sent, current, out);
+                frame.setInt(start, frame.size() - start - Integer.BYTES);
+                pending = frame.toByteBuffer();
+                int size = pending.remaining();
+                if (flush() && game.isOver()) {
+                    close();
+                }
+                return size;
+            } catch (IOException e) {
+                close();
+                return 0;
+            }
+        }
+
+        private boolean flush() throws IOException {
+            channel.write(pending);
+            if (pending.hasRemaining()) {
+                return false;
+            }
+            pending = null;
+            return true;
+        }
+
+        private boolean isClosed() {
+            return closed;
+        }
+
+        private void close() {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    // Messages are encoded in place, so the buffer is reused from tick to tick
+    private static final class Frame extends ByteArrayOutputStream {
+
+        private void setInt(int index, int value) {
+            buf[index] = (byte) (value >>> 24);
+            buf[index + 1] = (byte) (value >>> 16);
+            buf[index + 2] = (byte) (value >>> 8);
+            buf[index + 3] = (byte) value;
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int shards = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        try (GameServer server = new GameServer(LevelData.loadAll(), shards)) {
+            System.out.println("Listening on port " + server.start(port) + " with " + shards + " shards");
+            long lastBytes = 0;
+            long lastDeltas = 0;
+            while (true) {
+                TimeUnit.SECONDS.sleep(REPORT_SECONDS);
+                long bytes = server.getBytesSent();
+                long deltas = server.getDeltasSent();
+                int matches = server.getMatchCount();
+                LatencyHistogram jitter = server.takeJitter();
+                System.out.printf("%d matches, %.0f bytes/s and %.1f bytes per delta per client, "
+                                + "tick jitter p50 %d us, p99 %d us, max %d us, %d ticks skipped%n",
+                        matches, (bytes - lastBytes) / (double) REPORT_SECONDS / Math.max(1, matches),
+                        (double) (bytes - lastBytes) / Math.max(1, deltas - lastDeltas),
+                        jitter.percentileMicros(50), jitter.percentileMicros(99), jitter.getMaxMicros(),
+                        server.getSkippedTicks());
+                lastBytes = bytes;
+                lastDeltas = deltas;
+            }
+        }
+    }
+}
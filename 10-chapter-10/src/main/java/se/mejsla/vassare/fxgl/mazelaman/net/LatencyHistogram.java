@@ -0,0 +1,53 @@
+package se.mejsla.vassare.fxgl.mazelaman.net;
+
+/**
+ * Counts latencies in buckets of one microsecond, up to {@link #MAX_MICROS}. Longer latencies are counted in the
+ * last bucket, but the maximum is kept exactly. Recording never allocates, so it can be done every tick.
+ * Not thread safe, a histogram must only be read once the thread that records into it has let go of it.
+ */
+public final class LatencyHistogram {
+
+    public static final int MAX_MICROS = 100_000;
+
+    private final long[] counts = new long[MAX_MICROS + 1];
+    private long count;
+    private long maxNanos;
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[(int) Math.min(micros, MAX_MICROS)]++;
+        count++;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        maxNanos = Math.max(maxNanos, other.maxNanos);
+    }
+
+    /**
+     * Returns the latency in microseconds that {@code percent} percent of the recorded latencies are within.
+     */
+    public long percentileMicros(double percent) {
+        long rank = (long) Math.ceil(count * percent / 100.0);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxMicros() {
+        return maxNanos / 1000;
+    }
+}
@@ -0,0 +1,117 @@
+package se.mejsla.vassare.fxgl.mazelaman.net;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Starts a {@link GameServer} and connects many clients with random input to it over localhost, to measure how many
+ * matches one server can run. All clients run on one thread, and only count the bytes they receive. The tool
+ * reports the heap used per match, the bandwidth per client, and how late the server ticks the matches.
+ * <p>
+ * The heap per match is measured in this process, so it includes the client end of each connection, and is a bit
+ * higher than on a server alone. The clients also compete with the server for the CPU.
+ * <p>
+ * Usage: LoadTest [matches] [seconds] [shards]
+ */
+public final class LoadTest {
+
+    private static final int DEFAULT_MATCHES = 500;
+    private static final int DEFAULT_SECONDS = 20;
+    private static final long WARM_UP_NANOS = 2_000_000_000L;
+    private static final long INPUT_NANOS = 100_000_000L;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MATCHES;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<LevelData> levels = LevelData.loadAll();
+        long heapBefore = usedHeap();
+        try (GameServer server = new GameServer(levels, shards); Selector selector = Selector.open()) {
+            int port = server.start(0);
+            List<SocketChannel> clients = new ArrayList<>();
+            for (int i = 0; i < matches; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ);
+                clients.add(channel);
+            }
+            System.out.printf("Connected %d clients to a server with %d shards%n", matches, shards);
+
+            Random input = new Random(1);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            ByteBuffer action = ByteBuffer.allocate(1);
+            long start = System.nanoTime();
+            long end = start + WARM_UP_NANOS + seconds * 1_000_000_000L;
+            long nextInput = start;
+            long received = 0;
+            long heapPerMatch = -1;
+            while (System.nanoTime() < end) {
+                selector.select(10);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    buffer.clear();
+                    int read = ((SocketChannel) key.channel()).read(buffer);
+                    if (read < 0) {
+                        key.channel().close();
+                    } else {
+                        received += read;
+                    }
+                }
+                long now = System.nanoTime();
+                if (now >= nextInput) {
+                    nextInput += INPUT_NANOS;
+                    for (SocketChannel channel : clients) {
+                        if (channel.isOpen() && input.nextInt(5) == 0) {
+                            action.clear();
+                            action.put(0, (byte) input.nextInt(Game.DOWN + 1));
+                            channel.write(action);
+                        }
+                    }
+                }
+                if (heapPerMatch < 0 && now - start >= WARM_UP_NANOS) {
+                    heapPerMatch = (usedHeap() - heapBefore) / matches;
+                    server.takeJitter();
+                    received = 0;
+                }
+            }
+
+            LatencyHistogram jitter = server.takeJitter();
+            System.out.printf("Heap per match: %.1f kB%n", heapPerMatch / 1024.0);
+            System.out.printf("Matches still running: %d of %d%n", server.getMatchCount(), matches);
+            System.out.printf("Bandwidth: %.0f bytes/s per client%n", (double) received / seconds / matches);
+            System.out.printf("Tick jitter over %d ticks: p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                    jitter.getCount(), jitter.percentileMicros(50), jitter.percentileMicros(99),
+                    jitter.percentileMicros(99.9), jitter.getMaxMicros());
+            System.out.printf("Ticks skipped: %d%n", server.getSkippedTicks());
+            for (SocketChannel channel : clients) {
+                channel.close();
+            }
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,107 @@
+package se.mejsla.vassare.fxgl.mazelaman.net;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes the difference between two game states written by
+ * {@link se.mejsla.vassare.fxgl.mazelaman.sim.Game#writeVisibleState}. Only the words that have changed are
+ * written, so the size of a delta depends on how much happened, not on the size of the level. A state word holds
+ * for example a position, the score, or 64 pills, so a ghost that moves costs one or two words, and an eaten pill
+ * one word.
+ * <p>
+ * Each changed word is written as the gap to the previous changed word, followed by the XOR of the old and new
+ * value. The XOR is written without its leading and trailing zero bytes, which for small changes to positions and
+ * counters leaves one to three bytes. The first delta is against a state of all zeros, which makes it a full
+ * snapshot.
+ */
+public final class StateDelta {
+
+    private StateDelta() {
+    }
+
+    /**
+     * Writes the difference between {@code previous} and {@code current} to {@code out}, and copies the changes
+     * into {@code previous}. Returns the number of changed words.
+     */
+    public static int write(long[] previous, long[] current, DataOutput out) throws IOException {
+        int changed = 0;
+        for (int i = 0; i < current.length; i++) {
+            if (previous[i] != current[i]) {
+                changed++;
+            }
+        }
+        writeVarInt(out, changed);
+        int last = -1;
+        for (int i = 0; i < current.length; i++) {
+            long xor = previous[i] ^ current[i];
+            if (xor != 0) {
+                writeVarInt(out, i - last - 1);
+                writeXor(out, xor);
+                previous[i] = current[i];
+                last = i;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Reads a delta written by {@link #write} and applies it to {@code state}.
+     */
+    public static void read(DataInput in, long[] state) throws IOException {
+        int changed = readVarInt(in);
+        int index = -1;
+        for (int i = 0; i < changed; i++) {
+            index += readVarInt(in) + 1;
+            if (index >= state.length) {
+                throw new IOException("State word out of range: " + index);
+            }
+            state[index] ^= readXor(in);
+        }
+    }
+
+    // The header byte holds the number of leading zero bytes in the high half and trailing zero bytes in the low half
+    private static void writeXor(DataOutput out, long xor) throws IOException {
+        int leading = Long.numberOfLeadingZeros(xor) / 8;
+        int trailing = Long.numberOfTrailingZeros(xor) / 8;
+        out.writeByte(leading << 4 | trailing);
+        for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8) {
+            out.writeByte((int) (xor >>> shift));
+        }
+    }
+
+    private static long readXor(DataInput in) throws IOException {
+        int header = in.readUnsignedByte();
+        int leading = header >>> 4;
+        int trailing = header & 0x0F;
+        if (leading + trailing > 7) {
+            throw new IOException("Invalid state word header: " + header);
+        }
+        long xor = 0;
+        for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8) {
+            xor |= (long) in.readUnsignedByte() << shift;
+        }
+        return xor;
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable length integer");
+    }
+}
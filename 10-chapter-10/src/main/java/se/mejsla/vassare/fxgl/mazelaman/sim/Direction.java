@@ -0,0 +1,44 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+public enum Direction {
+    // Declared in the order ghosts prefer when two directions are equally good
+    UP(0, -1),
+    LEFT(-1, 0),
+    DOWN(0, 1),
+    RIGHT(1, 0),
+    NONE(0, 0);
+
+    /** The directions that actually move, in order of preference. */
+    static final Direction[] MOVES = {UP, LEFT, DOWN, RIGHT};
+
+    private final int dx;
+    private final int dy;
+
+    Direction(int dx, int dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    public int getDx() {
+        return dx;
+    }
+
+    public int getDy() {
+        return dy;
+    }
+
+    public Direction opposite() {
+        switch (this) {
+            case UP:
+                return DOWN;
+            case DOWN:
+                return UP;
+            case LEFT:
+                return RIGHT;
+            case RIGHT:
+                return LEFT;
+            default:
+                return NONE;
+        }
+    }
+}
@@ -0,0 +1,631 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A headless MazelaMan game that runs without FXGL or JavaFX.
+ * <p>
+ * The rules mirror MazelaManApp.onPlayerCollision: pills give 10 points and clearing all pills advances to the next
+ * level, power pills give 50 points and frighten the ghosts, cherries give 100 points, eating a frightened ghost
+ * gives 200 points, and touching any other ghost costs a life and respawns everybody. Ghosts move like
+ * GhostComponent.
+ * All state is kept in arrays and motion objects that are only reallocated when a bigger level is loaded, and
+ * are reused when the game goes on to the next level, so stepping the game does not allocate.
+ */
+public final class Game implements Stateful {
+
+    public static final int NONE = 0;
+    public static final int LEFT = 1;
+    public static final int RIGHT = 2;
+    public static final int UP = 3;
+    public static final int DOWN = 4;
+
+    /** Observation tile codes. */
+    public static final byte EMPTY_TILE = 0;
+    public static final byte WALL_TILE = 1;
+    public static final byte PILL_TILE = 2;
+    public static final byte CHERRY_TILE = 3;
+    public static final byte GHOST_TILE = 4;
+    public static final byte PLAYER_TILE = 5;
+    public static final byte POWER_PILL_TILE = 6;
+
+    public static final double TPF = 1.0 / 60.0;
+
+    // Layout of the words written by writeState, followed by the ghosts, cherries and the eaten pills bit set
+    private static final int FRAME = 0;
+    private static final int LEVEL = 1;
+    private static final int SCORE = 2;
+    private static final int LIVES = 3;
+    private static final int FLAGS = 4;
+    private static final int RNG = 5;
+    private static final int GHOST_PHASE = 6;
+    private static final int GHOST_PHASE_TIME = 7;
+    private static final int GHOST_FRIGHTENED_TIME = 8;
+    private static final int GHOST_FRIGHTENINGS = 9;
+    private static final int PLAYER_X = 10;
+    private static final int PLAYER_Y = 11;
+    private static final int PLAYER_MOVING = 12;
+    private static final int PLAYER_WANTED = 13;
+    private static final int PLAYER_FACING = 14;
+    private static final int PILLS_REMAINING = 15;
+    private static final int HEADER_SIZE = 16;
+    private static final int GHOST_SIZE = 4;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private static final double PLAYER_SPEED = 150.0;
+    private static final double GHOST_SPEED = 100.0;
+    private static final double SIZE = 20.0;
+    private static final double PILL_OFFSET = 5.0;
+    private static final double PILL_SIZE = 9.0;
+    private static final int CHERRY_CHANCE = 1000;
+    private static final double CHERRY_LIFETIME = 10.0;
+    private static final int START_LIVES = 3;
+
+    /**
+     * Is told about events in the game, for tools that collect statistics over many games.
+     */
+    public interface Listener {
+
+        default void playerDied(double x, double y) {
+        }
+
+        default void pillEaten(double x, double y) {
+        }
+    }
+
+    private final List<LevelData> levels;
+    private final Rng random = new Rng(0);
+    private final GhostModeScheduler ghostModes = new GhostModeScheduler();
+    private Listener listener;
+
+    private LevelData levelData;
+    private Maze maze;
+    private int level;
+    private int score;
+    private int lives;
+    private boolean over;
+    private boolean endOfGame;
+    private long frame;
+
+    private final PlayerMotion playerMotion = new PlayerMotion(0.0, 0.0);
+
+    private int ghostCount;
+    private GhostMotion[] ghosts = new GhostMotion[0];
+    private int blinky;
+
+    // Pills and power pills, the power pills last
+    private int pillCount;
+    private int powerPillStart;
+    private int pillsRemaining;
+    private double[] pillX = new double[0];
+    private double[] pillY = new double[0];
+    private boolean[] pillEaten = new boolean[0];
+
+    private int cherrySpawnCount;
+    private double[] cherryX = new double[0];
+    private double[] cherryY = new double[0];
+    private double[] cherryTimeLeft = new double[0];
+
+    public Game(List<LevelData> levels) {
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("No levels");
+        }
+        this.levels = levels;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void reset(long seed) {
+        random.setSeed(seed);
+        level = 1;
+        score = 0;
+        lives = START_LIVES;
+        over = false;
+        endOfGame = false;
+        frame = 0;
+        initLevel();
+    }
+
+    /**
+     * Advances the game one frame of {@link #TPF} seconds.
+     *
+     * @return The number of points scored during the frame.
+     */
+    public int step(int action) {
+        return step(action, TPF);
+    }
+
+    public int step(int action, double tpf) {
+        if (over) {
+            return 0;
+        }
+        int scoreBefore = score;
+        frame++;
+
+        applyAction(action);
+        ghostModes.update(tpf);
+        moveGhosts(tpf);
+        updateCherries(tpf);
+        movePlayer(tpf);
+
+        collidePills();
+        collideCherries();
+        collideGhosts();
+        return score - scoreBefore;
+    }
+
+    private void initLevel() {
+        if (level > levels.size()) {
+            over = true;
+            endOfGame = true;
+            return;
+        }
+        levelData = levels.get(level - 1);
+        maze = levelData.getMaze();
+        ghostModes.reset();
+
+        LevelObject player = levelData.getObjects("Player").get(0);
+        playerMotion.init(player.getX(), player.getY());
+
+        List<LevelObject> ghostObjects = levelData.getObjects("Ghost");
+        ghostCount = ghostObjects.size();
+        if (ghosts.length < ghostCount) {
+            ghosts = Arrays.copyOf(ghosts, ghostCount);
+        }
+        blinky = -1;
+        for (int i = 0; i < ghostCount; i++) {
+            LevelObject ghost = ghostObjects.get(i);
+            if (ghosts[i] == null) {
+                ghosts[i] = new GhostMotion(ghost.getName(), ghost.getX(), ghost.getY());
+            } else {
+                ghosts[i].init(ghost.getName(), ghost.getX(), ghost.getY());
+            }
+            if ("blinky".equals(ghost.getName())) {
+                blinky = i;
+            }
+        }
+
+        List<LevelObject> pills = levelData.getObjects("Pill");
+        List<LevelObject> powerPills = levelData.getObjects("PowerPill");
+        pillCount = pills.size() + powerPills.size();
+        powerPillStart = pills.size();
+        pillsRemaining = pillCount;
+        if (pillX.length < pillCount) {
+            pillX = new double[pillCount];
+            pillY = new double[pillCount];
+            pillEaten = new boolean[pillCount];
+        }
+        for (int i = 0; i < pillCount; i++) {
+            LevelObject pill = i < powerPillStart ? pills.get(i) : powerPills.get(i - powerPillStart);
+            pillX[i] = pill.getX();
+            pillY[i] = pill.getY();
+            pillEaten[i] = false;
+        }
+
+        List<LevelObject> cherrySpawnPoints = levelData.getObjects("CherrySpawnPoint");
+        cherrySpawnCount = cherrySpawnPoints.size();
+        if (cherryX.length < cherrySpawnCount) {
+            cherryX = new double[cherrySpawnCount];
+            cherryY = new double[cherrySpawnCount];
+            cherryTimeLeft = new double[cherrySpawnCount];
+        }
+        for (int i = 0; i < cherrySpawnCount; i++) {
+            LevelObject cherrySpawnPoint = cherrySpawnPoints.get(i);
+            cherryX[i] = cherrySpawnPoint.getX();
+            cherryY[i] = cherrySpawnPoint.getY();
+            cherryTimeLeft[i] = 0.0;
+        }
+    }
+
+    private void respawnPlayer() {
+        playerMotion.reset();
+    }
+
+    private void respawnGhosts() {
+        ghostModes.reset();
+        for (int i = 0; i < ghostCount; i++) {
+            ghosts[i].reset();
+        }
+    }
+
+    private void applyAction(int action) {
+        switch (action) {
+            case LEFT:
+                playerMotion.turn(Direction.LEFT);
+                break;
+            case RIGHT:
+                playerMotion.turn(Direction.RIGHT);
+                break;
+            case UP:
+                playerMotion.turn(Direction.UP);
+                break;
+            case DOWN:
+                playerMotion.turn(Direction.DOWN);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void moveGhosts(double tpf) {
+        int playerTile = maze.tileOf(playerMotion.getX(), playerMotion.getY());
+        int blinkyTile = blinky >= 0 ? maze.tileOf(ghosts[blinky].getX(), ghosts[blinky].getY()) : -1;
+        for (int i = 0; i < ghostCount; i++) {
+            GhostMotion ghost = ghosts[i];
+            int target = GhostTargeting.target(ghost.getName(), ghost.getMode(ghostModes), maze,
+                    maze.tileOf(ghost.getX(), ghost.getY()), playerTile, playerMotion.getFacing(), blinkyTile);
+            ghost.advance(GHOST_SPEED * tpf, maze, target, random);
+        }
+    }
+
+    private void updateCherries(double tpf) {
+        for (int i = 0; i < cherrySpawnCount; i++) {
+            if (cherryTimeLeft[i] > 0.0) {
+                cherryTimeLeft[i] = Math.max(0.0, cherryTimeLeft[i] - tpf);
+            } else if (random.nextInt(CHERRY_CHANCE) == 0) {
+                cherryTimeLeft[i] = CHERRY_LIFETIME;
+            }
+        }
+    }
+
+    private void movePlayer(double tpf) {
+        playerMotion.advance(PLAYER_SPEED * tpf, maze);
+    }
+
+    private void collidePills() {
+        for (int i = 0; i < pillCount; i++) {
+            if (!pillEaten[i] && overlaps(playerMotion.getX(), playerMotion.getY(), SIZE, SIZE,
+                    pillX[i] + PILL_OFFSET, pillY[i] + PILL_OFFSET, PILL_SIZE, PILL_SIZE)) {
+                pillEaten[i] = true;
+                pillsRemaining--;
+                if (listener != null) {
+                    listener.pillEaten(pillX[i], pillY[i]);
+                }
+                if (i < powerPillStart) {
+                    score += 10;
+                } else {
+                    score += 50;
+                    ghostModes.frighten();
+                }
+            }
+        }
+        if (pillsRemaining == 0) {
+            level++;
+            initLevel();
+        }
+    }
+
+    private void collideCherries() {
+        for (int i = 0; i < cherrySpawnCount; i++) {
+            if (cherryTimeLeft[i] > 0.0
+                    && overlaps(playerMotion.getX(), playerMotion.getY(), SIZE, SIZE,
+                    cherryX[i], cherryY[i], SIZE, SIZE)) {
+                cherryTimeLeft[i] = 0.0;
+                score += 100;
+            }
+        }
+    }
+
+    private void collideGhosts() {
+        for (int i = 0; i < ghostCount; i++) {
+            GhostMotion ghost = ghosts[i];
+            if (!overlaps(playerMotion.getX(), playerMotion.getY(), SIZE, SIZE,
+                    ghost.getX(), ghost.getY(), SIZE, SIZE)) {
+                continue;
+            }
+            if (ghost.isFrightened(ghostModes)) {
+                ghost.eaten(ghostModes);
+                score += 200;
+            } else {
+                if (listener != null) {
+                    listener.playerDied(playerMotion.getX(), playerMotion.getY());
+                }
+                lives--;
+                if (lives > 0) {
+                    respawnGhosts();
+                    respawnPlayer();
+                } else {
+                    over = true;
+                }
+                return;
+            }
+        }
+    }
+
+    private static boolean overlaps(double x1, double y1, double w1, double h1,
+                                    double x2, double y2, double w2, double h2) {
+        return x1 < x2 + w2 && x1 + w1 > x2 && y1 < y2 + h2 && y1 + h1 > y2;
+    }
+
+    /**
+     * Returns the number of bytes {@link #observe} writes for a level of the given size.
+     */
+    public static int observationSize(LevelData levelData) {
+        return levelData.getColumns() * levelData.getRows();
+    }
+
+    /**
+     * Writes the current tile grid into {@code buffer}, one byte per tile, using the *_TILE codes.
+     */
+    public void observe(byte[] buffer, int offset) {
+        int columns = levelData.getColumns();
+        int rows = levelData.getRows();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                buffer[offset + row * columns + column] = levelData.isWallTile(column, row) ? WALL_TILE : EMPTY_TILE;
+            }
+        }
+        for (int i = 0; i < pillCount; i++) {
+            if (!pillEaten[i]) {
+                mark(buffer, offset, pillX[i], pillY[i], i < powerPillStart ? PILL_TILE : POWER_PILL_TILE);
+            }
+        }
+        for (int i = 0; i < cherrySpawnCount; i++) {
+            if (cherryTimeLeft[i] > 0.0) {
+                mark(buffer, offset, cherryX[i], cherryY[i], CHERRY_TILE);
+            }
+        }
+        for (int i = 0; i < ghostCount; i++) {
+            mark(buffer, offset, ghosts[i].getX(), ghosts[i].getY(), GHOST_TILE);
+        }
+        mark(buffer, offset, playerMotion.getX(), playerMotion.getY(), PLAYER_TILE);
+    }
+
+    private void mark(byte[] buffer, int offset, double x, double y, byte tile) {
+        int column = (int) ((x + SIZE / 2) / levelData.getTileWidth());
+        int row = (int) ((y + SIZE / 2) / levelData.getTileHeight());
+        if (column >= 0 && row >= 0 && column < levelData.getColumns() && row < levelData.getRows()) {
+            buffer[offset + row * levelData.getColumns() + column] = tile;
+        }
+    }
+
+    /**
+     * Returns the number of words {@link #writeState} writes for a level.
+     */
+    public static int stateSize(LevelData levelData) {
+        int pills = levelData.getObjects("Pill").size() + levelData.getObjects("PowerPill").size();
+        return HEADER_SIZE
+                + GHOST_SIZE * levelData.getObjects("Ghost").size()
+                + levelData.getObjects("CherrySpawnPoint").size()
+                + (pills + 63) / 64;
+    }
+
+    /**
+     * Returns the number of words {@link #writeState} writes for the level the game is on now.
+     */
+    @Override
+    public int stateSize() {
+        return stateSize(levelData);
+    }
+
+    /**
+     * Returns the number of words in {@code state}, as written by {@link #writeState} for this game's levels,
+     * or -1 if it is not a state of this game.
+     */
+    @Override
+    public int stateSize(long[] state) {
+        if (state.length <= LEVEL || state[LEVEL] < 1) {
+            return -1;
+        }
+        return stateSize(levels.get(Math.min((int) state[LEVEL], levels.size()) - 1));
+    }
+
+    public static int maxStateSize(List<LevelData> levels) {
+        return levels.stream().mapToInt(Game::stateSize).max().orElse(HEADER_SIZE);
+    }
+
+    /**
+     * Writes the complete dynamic state of the game into {@code state}, and clears the rest of the array.
+     * The static parts of the level are not included, as they can be recreated from the level number.
+     */
+    @Override
+    public void writeState(long[] state) {
+        state[FRAME] = frame;
+        state[LEVEL] = level;
+        state[SCORE] = score;
+        state[LIVES] = lives;
+        state[FLAGS] = (over ? 1 : 0) | (endOfGame ? 2 : 0);
+        state[RNG] = random.getState();
+        state[GHOST_PHASE] = ghostModes.getPhase();
+        state[GHOST_PHASE_TIME] = Double.doubleToRawLongBits(ghostModes.getPhaseTime());
+        state[GHOST_FRIGHTENED_TIME] = Double.doubleToRawLongBits(ghostModes.getFrightenedTime());
+        state[GHOST_FRIGHTENINGS] = ghostModes.getFrightenings();
+        state[PLAYER_X] = Double.doubleToRawLongBits(playerMotion.getX());
+        state[PLAYER_Y] = Double.doubleToRawLongBits(playerMotion.getY());
+        state[PLAYER_MOVING] = playerMotion.getDirection().ordinal();
+        state[PLAYER_WANTED] = playerMotion.getWanted().ordinal();
+        state[PLAYER_FACING] = playerMotion.getFacing().ordinal();
+        state[PILLS_REMAINING] = pillsRemaining;
+
+        int i = HEADER_SIZE;
+        for (int g = 0; g < ghostCount; g++) {
+            GhostMotion ghost = ghosts[g];
+            state[i++] = Double.doubleToRawLongBits(ghost.getX());
+            state[i++] = Double.doubleToRawLongBits(ghost.getY());
+            state[i++] = ghost.getDirection().ordinal();
+            state[i++] = ghost.getEatenIn();
+        }
+        for (int c = 0; c < cherrySpawnCount; c++) {
+            state[i++] = Double.doubleToRawLongBits(cherryTimeLeft[c]);
+        }
+        Arrays.fill(state, i, state.length, 0L);
+        for (int p = 0; p < pillCount; p++) {
+            if (pillEaten[p]) {
+                state[i + p / 64] |= 1L << (p % 64);
+            }
+        }
+    }
+
+    /**
+     * Writes the state like {@link #writeState}, except for the random number generator. This is all that is needed
+     * to show the game, and leaving out the generator, which changes in almost every frame, keeps deltas small.
+     */
+    public void writeVisibleState(long[] state) {
+        writeState(state);
+        state[RNG] = 0L;
+    }
+
+    /**
+     * Restores a state written by {@link #writeState}. The level is only reloaded if the state is from another level.
+     */
+    @Override
+    public void readState(long[] state) {
+        int stateLevel = (int) state[LEVEL];
+        LevelData stateLevelData = levels.get(Math.min(stateLevel, levels.size()) - 1);
+        if (levelData != stateLevelData) {
+            level = Math.min(stateLevel, levels.size());
+            initLevel();
+        }
+
+        frame = state[FRAME];
+        level = stateLevel;
+        score = (int) state[SCORE];
+        lives = (int) state[LIVES];
+        over = (state[FLAGS] & 1) != 0;
+        endOfGame = (state[FLAGS] & 2) != 0;
+        random.setState(state[RNG]);
+        ghostModes.restore((int) state[GHOST_PHASE],
+                Double.longBitsToDouble(state[GHOST_PHASE_TIME]),
+                Double.longBitsToDouble(state[GHOST_FRIGHTENED_TIME]),
+                (int) state[GHOST_FRIGHTENINGS]);
+        playerMotion.restore(
+                Double.longBitsToDouble(state[PLAYER_X]),
+                Double.longBitsToDouble(state[PLAYER_Y]),
+                DIRECTIONS[(int) state[PLAYER_MOVING]],
+                DIRECTIONS[(int) state[PLAYER_WANTED]],
+                DIRECTIONS[(int) state[PLAYER_FACING]]);
+        pillsRemaining = (int) state[PILLS_REMAINING];
+
+        int i = HEADER_SIZE;
+        for (int g = 0; g < ghostCount; g++) {
+            ghosts[g].restore(
+                    Double.longBitsToDouble(state[i]),
+                    Double.longBitsToDouble(state[i + 1]),
+                    DIRECTIONS[(int) state[i + 2]],
+                    (int) state[i + 3]);
+            i += GHOST_SIZE;
+        }
+        for (int c = 0; c < cherrySpawnCount; c++) {
+            cherryTimeLeft[c] = Double.longBitsToDouble(state[i++]);
+        }
+        for (int p = 0; p < pillCount; p++) {
+            pillEaten[p] = (state[i + p / 64] & (1L << (p % 64))) != 0;
+        }
+    }
+
+    public int nextSeed() {
+        return random.nextInt();
+    }
+
+    public LevelData getLevelData() {
+        return levelData;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public boolean isOver() {
+        return over;
+    }
+
+    public boolean isEndOfGame() {
+        return endOfGame;
+    }
+
+    @Override
+    public long getFrame() {
+        return frame;
+    }
+
+    public int getPillsRemaining() {
+        return pillsRemaining;
+    }
+
+    public double getPlayerX() {
+        return playerMotion.getX();
+    }
+
+    public double getPlayerY() {
+        return playerMotion.getY();
+    }
+
+    public Direction getPlayerFacing() {
+        return playerMotion.getFacing();
+    }
+
+    /**
+     * Returns the number of pills on this level, including the power pills, which come last.
+     */
+    public int getPillCount() {
+        return pillCount;
+    }
+
+    public double getPillX(int i) {
+        return pillX[i];
+    }
+
+    public double getPillY(int i) {
+        return pillY[i];
+    }
+
+    public boolean isPillEaten(int i) {
+        return pillEaten[i];
+    }
+
+    public boolean isPowerPill(int i) {
+        return i >= powerPillStart;
+    }
+
+    public int getCherrySpawnCount() {
+        return cherrySpawnCount;
+    }
+
+    public double getCherryX(int i) {
+        return cherryX[i];
+    }
+
+    public double getCherryY(int i) {
+        return cherryY[i];
+    }
+
+    /**
+     * Returns true if there is a cherry at cherry spawn point {@code i}.
+     */
+    public boolean hasCherry(int i) {
+        return cherryTimeLeft[i] > 0.0;
+    }
+
+    public int getGhostCount() {
+        return ghostCount;
+    }
+
+    public GhostMotion getGhost(int i) {
+        return ghosts[i];
+    }
+
+    public GhostMode getGhostMode() {
+        return ghostModes.getMode();
+    }
+
+    public boolean isGhostFrightened(int i) {
+        return ghosts[i].isFrightened(ghostModes);
+    }
+
+    @Override
+    public String toString() {
+        return "Game(level=" + level + ", score=" + score + ", lives=" + lives + ", pills=" + pillsRemaining
+                + ", frame=" + frame + ", over=" + over + ", ghosts=" + ghostCount + ")";
+    }
+}
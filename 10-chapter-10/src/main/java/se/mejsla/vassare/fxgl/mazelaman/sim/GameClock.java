@@ -0,0 +1,65 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+/**
+ * Turns real time into a whole number of fixed game steps of {@link Game#TPF} seconds. Game time runs
+ * {@link #getScale()} times as fast as real time. Since the game always moves in steps of the same length,
+ * the same seed and input give the same outcome at any scale, only the number of steps per real frame differs.
+ */
+public final class GameClock {
+
+    public static final double STEP = Game.TPF;
+    public static final double MIN_SCALE = 0.25;
+    public static final double MAX_SCALE = 64.0;
+
+    // After a long hitch the clock gives up on catching up, instead of freezing while it runs thousands of steps
+    private static final int MAX_STEPS_PER_FRAME = 1024;
+
+    private double scale = 1.0;
+    private double pending;
+    private long steps;
+
+    /**
+     * Adds {@code seconds} of real time, and returns the number of game steps to take for it.
+     */
+    public int advance(double seconds) {
+        pending += seconds * scale;
+        // Allow for rounding errors, or adding 1/60 s at a time would sometimes give no step and then two
+        int count = (int) Math.min(MAX_STEPS_PER_FRAME, Math.floor(pending / STEP + 1e-6));
+        pending = count == MAX_STEPS_PER_FRAME ? 0.0 : pending - count * STEP;
+        steps += count;
+        return count;
+    }
+
+    /**
+     * Forgets any time that has not yet been turned into steps.
+     */
+    public void reset() {
+        pending = 0.0;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Sets the scale of game time to real time, limited to the range {@link #MIN_SCALE} to {@link #MAX_SCALE}.
+     */
+    public void setScale(double scale) {
+        this.scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale));
+    }
+
+    public void faster() {
+        setScale(scale * 2.0);
+    }
+
+    public void slower() {
+        setScale(scale / 2.0);
+    }
+
+    /**
+     * Returns the number of steps taken since the clock was created.
+     */
+    public long getSteps() {
+        return steps;
+    }
+}
@@ -0,0 +1,7 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+public enum GhostMode {
+    SCATTER,
+    CHASE,
+    FRIGHTENED
+}
@@ -0,0 +1,75 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+/**
+ * Switches all ghosts between scatter and chase on a fixed schedule, and into frightened mode when a power pill
+ * is eaten. There is one scheduler per game, driven by game time, so ghosts do not need timers of their own.
+ */
+public final class GhostModeScheduler {
+
+    // Alternating scatter and chase phases in seconds, the last chase phase lasts forever
+    private static final double[] PHASES = {7.0, 20.0, 7.0, 20.0, 5.0, 20.0, 5.0};
+    private static final double FRIGHTENED_TIME = 6.0;
+
+    private int phase;
+    private double phaseTime;
+    private double frightenedTime;
+    private int frightenings;
+
+    public void reset() {
+        phase = 0;
+        phaseTime = 0.0;
+        frightenedTime = 0.0;
+    }
+
+    public void update(double tpf) {
+        // The scatter/chase schedule is paused while the ghosts are frightened
+        if (frightenedTime > 0.0) {
+            frightenedTime = Math.max(0.0, frightenedTime - tpf);
+            return;
+        }
+        phaseTime += tpf;
+        while (phase < PHASES.length && phaseTime >= PHASES[phase]) {
+            phaseTime -= PHASES[phase];
+            phase++;
+        }
+    }
+
+    public void frighten() {
+        frightenedTime = FRIGHTENED_TIME;
+        frightenings++;
+    }
+
+    public GhostMode getMode() {
+        if (frightenedTime > 0.0) {
+            return GhostMode.FRIGHTENED;
+        }
+        return phase % 2 == 0 && phase < PHASES.length ? GhostMode.SCATTER : GhostMode.CHASE;
+    }
+
+    /**
+     * Returns the number of times the ghosts have been frightened. A ghost that is eaten remembers this number,
+     * so it is not frightened again until the next power pill.
+     */
+    public int getFrightenings() {
+        return frightenings;
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    public double getPhaseTime() {
+        return phaseTime;
+    }
+
+    public double getFrightenedTime() {
+        return frightenedTime;
+    }
+
+    public void restore(int phase, double phaseTime, double frightenedTime, int frightenings) {
+        this.phase = phase;
+        this.phaseTime = phaseTime;
+        this.frightenedTime = frightenedTime;
+        this.frightenings = frightenings;
+    }
+}
@@ -0,0 +1,182 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.Random;
+
+/**
+ * Moves a ghost from tile to tile through the maze. The ghost only picks a new direction when it is exactly on a tile,
+ * and it never turns around unless it has run into a dead end.
+ */
+public final class GhostMotion {
+
+    private String name;
+    private double startX;
+    private double startY;
+
+    private double x;
+    private double y;
+    private Direction direction;
+    private int eatenIn = -1;
+
+    public GhostMotion(String name, double x, double y) {
+        init(name, x, y);
+    }
+
+    /**
+     * Makes this ghost {@code name}, starting at ({@code x}, {@code y}) and not yet eaten, as if it had just been
+     * created.
+     */
+    public void init(String name, double x, double y) {
+        this.name = name;
+        this.startX = x;
+        this.startY = y;
+        this.eatenIn = -1;
+        reset();
+    }
+
+    public void reset() {
+        x = startX;
+        y = startY;
+        direction = Direction.UP;
+    }
+
+    /**
+     * Moves the place the ghost returns to when it is reset or eaten, without moving the ghost.
+     */
+    public void setStart(double x, double y) {
+        startX = x;
+        startY = y;
+    }
+
+    /**
+     * Sends the ghost back home. It will not be frightened again until the next power pill.
+     */
+    public void eaten(GhostModeScheduler scheduler) {
+        reset();
+        eatenIn = scheduler.getFrightenings();
+    }
+
+    public boolean isFrightened(GhostModeScheduler scheduler) {
+        return scheduler.getMode() == GhostMode.FRIGHTENED && eatenIn != scheduler.getFrightenings();
+    }
+
+    /**
+     * Returns the mode of this ghost. A ghost that has been eaten chases the player while the others are frightened.
+     */
+    public GhostMode getMode(GhostModeScheduler scheduler) {
+        if (isFrightened(scheduler)) {
+            return GhostMode.FRIGHTENED;
+        }
+        return scheduler.getMode() == GhostMode.FRIGHTENED ? GhostMode.CHASE : scheduler.getMode();
+    }
+
+    /**
+     * Moves the ghost {@code distance} pixels towards {@code target}, or randomly if {@code target} is -1.
+     * Any number of tiles may be passed in one call, so large time steps are handled correctly.
+     */
+    public void advance(double distance, Maze maze, int target, Random random) {
+        alignToGrid(maze);
+        while (distance > 0.0) {
+            if (isOnTile(maze)) {
+                direction = choose(maze, target, random);
+                if (direction == Direction.NONE) {
+                    return;
+                }
+            }
+            double toNextTile = distanceToNextTile(maze);
+            if (distance >= toNextTile) {
+                int tileWidth = maze.getTileWidth();
+                int tileHeight = maze.getTileHeight();
+                x = Math.round((x + direction.getDx() * toNextTile) / tileWidth) * (double) tileWidth;
+                y = Math.round((y + direction.getDy() * toNextTile) / tileHeight) * (double) tileHeight;
+                distance -= toNextTile;
+            } else {
+                x += direction.getDx() * distance;
+                y += direction.getDy() * distance;
+                distance = 0.0;
+            }
+        }
+    }
+
+    private Direction choose(Maze maze, int target, Random random) {
+        int tile = maze.tileOf(x, y);
+        Direction reverse = direction.opposite();
+        Direction best = Direction.NONE;
+        int bestDistance = Integer.MAX_VALUE;
+        int options = 0;
+        for (Direction candidate : Direction.MOVES) {
+            int next = maze.step(tile, candidate);
+            if (candidate == reverse || !maze.isOpen(next)) {
+                continue;
+            }
+            if (target < 0) {
+                // Pick uniformly among the open directions
+                options++;
+                if (random.nextInt(options) == 0) {
+                    best = candidate;
+                }
+            } else {
+                int candidateDistance = maze.distance(next, target);
+                if (best == Direction.NONE || candidateDistance < bestDistance) {
+                    best = candidate;
+                    bestDistance = candidateDistance;
+                }
+            }
+        }
+        if (best == Direction.NONE && reverse != Direction.NONE && maze.isOpen(maze.step(tile, reverse))) {
+            best = reverse;
+        }
+        return best;
+    }
+
+    // A ghost that is not on a tile must at least be in line with the tiles it is moving between
+    private void alignToGrid(Maze maze) {
+        boolean alignedX = x % maze.getTileWidth() == 0.0;
+        boolean alignedY = y % maze.getTileHeight() == 0.0;
+        if ((!alignedX && !alignedY) || (!alignedX && direction.getDx() == 0)
+                || (!alignedY && direction.getDy() == 0)) {
+            int tile = maze.tileOf(x, y);
+            x = maze.x(tile);
+            y = maze.y(tile);
+        }
+    }
+
+    private boolean isOnTile(Maze maze) {
+        return x % maze.getTileWidth() == 0.0 && y % maze.getTileHeight() == 0.0;
+    }
+
+    private double distanceToNextTile(Maze maze) {
+        double size = direction.getDx() != 0 ? maze.getTileWidth() : maze.getTileHeight();
+        double offset = direction.getDx() != 0 ? x % size : y % size;
+        if (direction.getDx() + direction.getDy() > 0) {
+            return size - offset;
+        }
+        return offset == 0.0 ? size : offset;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public int getEatenIn() {
+        return eatenIn;
+    }
+
+    public void restore(double x, double y, Direction direction, int eatenIn) {
+        this.x = x;
+        this.y = y;
+        this.direction = direction;
+        this.eatenIn = eatenIn;
+    }
+}
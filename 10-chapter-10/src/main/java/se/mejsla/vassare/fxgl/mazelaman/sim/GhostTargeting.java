@@ -0,0 +1,74 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+/**
+ * Picks the tile a ghost is heading for, depending on its name and the current ghost mode.
+ * The rules are the ones from the original arcade game.
+ */
+public final class GhostTargeting {
+
+    private static final int CLYDE_SHYNESS = 8;
+
+    private GhostTargeting() {
+    }
+
+    /**
+     * Returns the target tile for ghost {@code name}, or -1 if the ghost is frightened and should move randomly.
+     *
+     * @param blinkyTile The tile of blinky, used by inky, or -1 if there is no blinky.
+     */
+    public static int target(String name, GhostMode mode, Maze maze, int ghostTile,
+                             int playerTile, Direction playerDirection, int blinkyTile) {
+        if (mode == GhostMode.FRIGHTENED) {
+            return -1;
+        }
+        if (mode == GhostMode.SCATTER) {
+            return scatterTarget(name, maze);
+        }
+
+        int playerColumn = maze.column(playerTile);
+        int playerRow = maze.row(playerTile);
+        int chaseTile = maze.nearestOpenTile(playerColumn, playerRow);
+        switch (name) {
+            case "pinky":
+                // Ambush four tiles ahead of the player
+                return maze.nearestOpenTile(
+                        playerColumn + 4 * playerDirection.getDx(),
+                        playerRow + 4 * playerDirection.getDy());
+            case "inky": {
+                // Double the vector from blinky to two tiles ahead of the player
+                int aheadColumn = playerColumn + 2 * playerDirection.getDx();
+                int aheadRow = playerRow + 2 * playerDirection.getDy();
+                if (blinkyTile < 0) {
+                    return maze.nearestOpenTile(aheadColumn, aheadRow);
+                }
+                return maze.nearestOpenTile(
+                        2 * aheadColumn - maze.column(blinkyTile),
+                        2 * aheadRow - maze.row(blinkyTile));
+            }
+            case "clyde": {
+                // Chase the player when far away, but retreat when getting close
+                int dx = playerColumn - maze.column(ghostTile);
+                int dy = playerRow - maze.row(ghostTile);
+                return dx * dx + dy * dy > CLYDE_SHYNESS * CLYDE_SHYNESS ? chaseTile : scatterTarget(name, maze);
+            }
+            default:
+                // Blinky, and any other ghost, goes straight for the player
+                return chaseTile;
+        }
+    }
+
+    private static int scatterTarget(String name, Maze maze) {
+        int right = maze.getColumns() - 1;
+        int bottom = maze.getRows() - 1;
+        switch (name) {
+            case "pinky":
+                return maze.nearestOpenTile(0, 0);
+            case "inky":
+                return maze.nearestOpenTile(right, bottom);
+            case "clyde":
+                return maze.nearestOpenTile(0, bottom);
+            default:
+                return maze.nearestOpenTile(right, 0);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.Random;
+
+/**
+ * A simple bot that heads for the nearest pill, and keeps away from ghosts that are not frightened. It only looks
+ * one tile ahead, so it is meant as a baseline to compare levels and other bots with, not as a good player.
+ * Distances are measured along the maze, using the distance fields that the maze caches for the ghosts.
+ * <p>
+ * The bot makes a mistake now and then and goes a random way until it reaches the next tile, so that games with
+ * different seeds play out differently.
+ */
+public final class GreedyBot {
+
+    private static final int DANGER_DISTANCE = 3;
+    private static final int DANGER_COST = 1000;
+
+    private final Random random;
+    private final double mistakeRate;
+    private int lastTile = -1;
+    private int mistake = Game.NONE;
+
+    public GreedyBot(Random random, double mistakeRate) {
+        this.random = random;
+        this.mistakeRate = mistakeRate;
+    }
+
+    /**
+     * Returns the action to take in the current frame of {@code game}.
+     */
+    public int act(Game game) {
+        Maze maze = game.getLevelData().getMaze();
+        int tile = maze.tileOf(game.getPlayerX(), game.getPlayerY());
+        if (tile != lastTile) {
+            lastTile = tile;
+            mistake = random.nextDouble() < mistakeRate ? 1 + random.nextInt(4) : Game.NONE;
+        }
+        if (mistake != Game.NONE) {
+            return mistake;
+        }
+
+        Direction best = Direction.NONE;
+        int bestCost = Integer.MAX_VALUE;
+        for (Direction direction : Direction.MOVES) {
+            int next = maze.step(tile, direction);
+            if (!maze.isOpen(next)) {
+                continue;
+            }
+            int cost = nearestPill(game, maze, next);
+            int ghost = nearestGhost(game, maze, next);
+            if (ghost < DANGER_DISTANCE) {
+                cost += (DANGER_DISTANCE - ghost) * DANGER_COST;
+            }
+            if (cost < bestCost) {
+                best = direction;
+                bestCost = cost;
+            }
+        }
+        return action(best);
+    }
+
+    private static int nearestPill(Game game, Maze maze, int tile) {
+        int nearest = Integer.MAX_VALUE;
+        for (int i = 0; i < game.getPillCount(); i++) {
+            if (!game.isPillEaten(i)) {
+                nearest = Math.min(nearest, maze.distance(tile, maze.tileOf(game.getPillX(i), game.getPillY(i))));
+            }
+        }
+        return nearest;
+    }
+
+    private static int nearestGhost(Game game, Maze maze, int tile) {
+        int nearest = Integer.MAX_VALUE;
+        for (int i = 0; i < game.getGhostCount(); i++) {
+            if (!game.isGhostFrightened(i)) {
+                GhostMotion ghost = game.getGhost(i);
+                nearest = Math.min(nearest, maze.distance(tile, maze.tileOf(ghost.getX(), ghost.getY())));
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Returns the {@link Game} action that moves in {@code direction}.
+     */
+    public static int action(Direction direction) {
+        switch (direction) {
+            case LEFT:
+                return Game.LEFT;
+            case RIGHT:
+                return Game.RIGHT;
+            case UP:
+                return Game.UP;
+            case DOWN:
+                return Game.DOWN;
+            default:
+                return Game.NONE;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable level data read from a TMX file, without going through FXGL.
+ * Instances can be shared between any number of headless games.
+ */
+public final class LevelData {
+
+    private static final String LEVELS_DIR = "/assets/levels/";
+
+    private final String name;
+    private final int columns;
+    private final int rows;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final List<LevelObject> objects;
+    private final Tileset tileset;
+    private final List<int[]> tileLayers;
+    private final Map<String, List<LevelObject>> objectsByType;
+    private final boolean[] wallTiles;
+
+    private volatile Maze maze;
+
+    private LevelData(String name, int columns, int rows, int tileWidth, int tileHeight, List<LevelObject> objects,
+                      Tileset tileset, List<int[]> tileLayers) {
+        this.name = name;
+        this.columns = columns;
+        this.rows = rows;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.objects = Collections.unmodifiableList(objects);
+        this.tileset = tileset;
+        this.tileLayers = Collections.unmodifiableList(tileLayers);
+
+        Map<String, List<LevelObject>> byType = new HashMap<>();
+        for (LevelObject object : objects) {
+            byType.computeIfAbsent(object.getType(), type -> new ArrayList<>()).add(object);
+        }
+        byType.replaceAll((type, list) -> Collections.unmodifiableList(list));
+        this.objectsByType = Collections.unmodifiableMap(byType);
+
+        // A tile is a wall tile if its center is covered by a wall
+        this.wallTiles = new boolean[columns * rows];
+        for (LevelObject wall : getObjects("Wall")) {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    if (wall.contains((column + 0.5) * tileWidth, (row + 0.5) * tileHeight)) {
+                        wallTiles[row * columns + column] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads level {@code fileName} from the assets/levels directory on the class path.
+     *
+     * @throws IllegalArgumentException If the level does not exist, just like FXGL does.
+     */
+    public static LevelData load(String fileName) {
+        try (InputStream in = LevelData.class.getResourceAsStream(LEVELS_DIR + fileName)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Level not found: " + fileName);
+            }
+            return parse(fileName, in);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load level: " + fileName, e);
+        }
+    }
+
+    /**
+     * Loads a level from {@code file}, for example a level file being edited outside of the class path.
+     */
+    public static LevelData load(Path file) {
+        String fileName = file.getFileName().toString();
+        try (InputStream in = Files.newInputStream(file)) {
+            return parse(fileName, in);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load level: " + file, e);
+        }
+    }
+
+    /**
+     * Loads level1.tmx, level2.tmx, ... until there are no more levels.
+     */
+    public static List<LevelData> loadAll() {
+        List<LevelData> levels = new ArrayList<>();
+        while (LevelData.class.getResource(LEVELS_DIR + fileName(levels.size() + 1)) != null) {
+            levels.add(load(fileName(levels.size() + 1)));
+        }
+        return Collections.unmodifiableList(levels);
+    }
+
+    public static String fileName(int level) {
+        return "level" + level + ".tmx";
+    }
+
+    private static LevelData parse(String name, InputStream in) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        Element map = document.getDocumentElement();
+
+        List<LevelObject> objects = new ArrayList<>();
+        NodeList nodes = map.getElementsByTagName("object");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element object = (Element) nodes.item(i);
+            objects.add(new LevelObject(
+                    Integer.parseInt(object.getAttribute("id")),
+                    object.getAttribute("type"),
+                    object.getAttribute("name"),
+                    Double.parseDouble(object.getAttribute("x")),
+                    Double.parseDouble(object.getAttribute("y")),
+                    Double.parseDouble(object.getAttribute("width")),
+                    Double.parseDouble(object.getAttribute("height"))));
+        }
+
+        Tileset tileset = null;
+        NodeList tilesets = map.getElementsByTagName("tileset");
+        if (tilesets.getLength() > 0) {
+            Element element = (Element) tilesets.item(0);
+            Element image = (Element) element.getElementsByTagName("image").item(0);
+            tileset = new Tileset(
+                    Integer.parseInt(element.getAttribute("firstgid")),
+                    image.getAttribute("source"),
+                    Integer.parseInt(element.getAttribute("tilewidth")),
+                    Integer.parseInt(element.getAttribute("tileheight")),
+                    Integer.parseInt(element.getAttribute("columns")),
+                    intAttribute(element, "spacing"),
+                    intAttribute(element, "margin"));
+        }
+
+        List<int[]> tileLayers = new ArrayList<>();
+        NodeList layers = map.getElementsByTagName("layer");
+        for (int i = 0; i < layers.getLength(); i++) {
+            Element data = (Element) ((Element) layers.item(i)).getElementsByTagName("data").item(0);
+            if (!"csv".equals(data.getAttribute("encoding"))) {
+                throw new IllegalArgumentException("Only CSV encoded tile layers are supported: " + name);
+            }
+            String[] values = data.getTextContent().trim().split("\\s*,\\s*");
+            int[] gids = new int[values.length];
+            for (int j = 0; j < values.length; j++) {
+                // Ignore the flip flags in the top bits
+                gids[j] = (int) (Long.parseLong(values[j]) & 0x1FFFFFFF);
+            }
+            tileLayers.add(gids);
+        }
+
+        return new LevelData(name,
+                Integer.parseInt(map.getAttribute("width")),
+                Integer.parseInt(map.getAttribute("height")),
+                Integer.parseInt(map.getAttribute("tilewidth")),
+                Integer.parseInt(map.getAttribute("tileheight")),
+                objects,
+                tileset,
+                tileLayers);
+    }
+
+    private static int intAttribute(Element element, String name) {
+        String value = element.getAttribute(name);
+        return value.isEmpty() ? 0 : Integer.parseInt(value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    public List<LevelObject> getObjects() {
+        return objects;
+    }
+
+    public List<LevelObject> getObjects(String type) {
+        return objectsByType.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * Returns the tileset of the tile layers, or null if the level has no tileset.
+     */
+    public Tileset getTileset() {
+        return tileset;
+    }
+
+    /**
+     * Returns the tile layers, bottom layer first. Each layer has one gid per tile, row by row, where 0 means no tile.
+     * The arrays must not be modified.
+     */
+    public List<int[]> getTileLayers() {
+        return tileLayers;
+    }
+
+    public boolean isWallTile(int column, int row) {
+        return column < 0 || row < 0 || column >= columns || row >= rows || wallTiles[row * columns + column];
+    }
+
+    /**
+     * Returns the maze of this level, which is created the first time it is needed.
+     */
+    public Maze getMaze() {
+        Maze result = maze;
+        if (result == null) {
+            synchronized (this) {
+                result = maze;
+                if (result == null) {
+                    result = new Maze(this);
+                    maze = result;
+                }
+            }
+        }
+        return result;
+    }
+}
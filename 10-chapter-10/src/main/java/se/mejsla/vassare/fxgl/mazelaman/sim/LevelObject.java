@@ -0,0 +1,83 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.Objects;
+
+/**
+ * An object from a TMX object layer, such as a wall, pill or spawn point.
+ */
+public final class LevelObject {
+
+    private final int id;
+    private final String type;
+    private final String name;
+    private final double x;
+    private final double y;
+    private final double width;
+    private final double height;
+
+    public LevelObject(int id, String type, String name, double x, double y, double width, double height) {
+        this.id = id;
+        this.type = type;
+        this.name = name;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public boolean contains(double px, double py) {
+        return px >= x && px < x + width && py >= y && py < y + height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        LevelObject that = (LevelObject) o;
+        return id == that.id && Double.compare(that.x, x) == 0 && Double.compare(that.y, y) == 0
+                && Double.compare(that.width, width) == 0 && Double.compare(that.height, height) == 0
+                && type.equals(that.type) && name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, type, name, x, y, width, height);
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + name + ", " + x + ", " + y + ", " + width + "x" + height + ")";
+    }
+}
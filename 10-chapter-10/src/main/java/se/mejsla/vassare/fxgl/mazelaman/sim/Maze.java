@@ -0,0 +1,218 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The tile grid of a level, used for pathfinding. Open tiles are the tiles that are not walls and can be reached
+ * from the player's spawn point.
+ * <p>
+ * Distances to a target tile are computed with a breadth-first search the first time the target is asked for,
+ * and then cached. There is one maze per level, shared by all ghosts and games, so the cost of pathfinding does not
+ * grow with the number of ghosts. The maze is thread safe.
+ */
+public final class Maze {
+
+    private static final short UNREACHABLE = Short.MAX_VALUE;
+
+    private final int columns;
+    private final int rows;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final boolean[] open;
+    private final int[] nearestOpen;
+    private final AtomicReferenceArray<short[]> distances;
+
+    Maze(LevelData levelData) {
+        this.columns = levelData.getColumns();
+        this.rows = levelData.getRows();
+        this.tileWidth = levelData.getTileWidth();
+        this.tileHeight = levelData.getTileHeight();
+        this.open = new boolean[columns * rows];
+        this.distances = new AtomicReferenceArray<>(columns * rows);
+
+        // Flood fill from the player to find the open tiles
+        LevelObject player = levelData.getObjects("Player").get(0);
+        int start = tileOf(player.getX(), player.getY());
+        int[] queue = new int[columns * rows];
+        int head = 0;
+        int tail = 0;
+        open[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            int tile = queue[head++];
+            for (Direction direction : Direction.MOVES) {
+                int next = step(tile, direction);
+                if (next >= 0 && !open[next] && !levelData.isWallTile(column(next), row(next))) {
+                    open[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        // Flood fill from all open tiles to find the nearest open tile for any tile
+        this.nearestOpen = new int[columns * rows];
+        Arrays.fill(nearestOpen, -1);
+        head = 0;
+        tail = 0;
+        for (int tile = 0; tile < open.length; tile++) {
+            if (open[tile]) {
+                nearestOpen[tile] = tile;
+                queue[tail++] = tile;
+            }
+        }
+        while (head < tail) {
+            int tile = queue[head++];
+            for (Direction direction : Direction.MOVES) {
+                int next = step(tile, direction);
+                if (next >= 0 && nearestOpen[next] < 0) {
+                    nearestOpen[next] = nearestOpen[tile];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    public int column(int tile) {
+        return tile % columns;
+    }
+
+    public int row(int tile) {
+        return tile / columns;
+    }
+
+    public double x(int tile) {
+        return column(tile) * tileWidth;
+    }
+
+    public double y(int tile) {
+        return row(tile) * tileHeight;
+    }
+
+    /**
+     * Returns the tile under the center of a tile sized sprite at (x, y).
+     */
+    public int tileOf(double x, double y) {
+        int column = Math.max(0, Math.min(columns - 1, (int) Math.floor((x + tileWidth / 2.0) / tileWidth)));
+        int row = Math.max(0, Math.min(rows - 1, (int) Math.floor((y + tileHeight / 2.0) / tileHeight)));
+        return row * columns + column;
+    }
+
+    /**
+     * Returns the open tile closest to (column, row), which may be outside the map.
+     */
+    public int nearestOpenTile(int column, int row) {
+        column = Math.max(0, Math.min(columns - 1, column));
+        row = Math.max(0, Math.min(rows - 1, row));
+        return nearestOpen[row * columns + column];
+    }
+
+    public boolean isOpen(int tile) {
+        return tile >= 0 && open[tile];
+    }
+
+    /**
+     * Sweeps a tile sized box at (x, y) up to {@code distance} pixels in {@code direction}, and returns how far it
+     * gets before it touches a wall. Tiles that are not open are walls, and so is everything outside the map.
+     * The box does not have to be on a tile, and only the tiles in its path are looked at, so the cost depends on
+     * the distance and not on the size of the maze.
+     */
+    public double sweep(double x, double y, Direction direction, double distance) {
+        int step = direction.getDx() + direction.getDy();
+        if (step == 0) {
+            return 0.0;
+        }
+        boolean horizontal = direction.getDx() != 0;
+        double size = horizontal ? tileWidth : tileHeight;
+        double along = horizontal ? x : y;
+        double across = horizontal ? y / tileHeight : x / tileWidth;
+
+        // The box covers one or two lines of tiles across the direction it moves in
+        int first = (int) Math.floor(across);
+        int last = (int) Math.ceil(across);
+        // The first line of tiles ahead of the box that it does not already overlap
+        int line = step > 0 ? (int) Math.ceil(along / size) + 1 : (int) Math.floor(along / size) - 1;
+        double free = step > 0 ? (line - 1) * size - along : along - (line + 1) * size;
+        while (free < distance) {
+            for (int i = first; i <= last; i++) {
+                if (horizontal ? isWall(line, i) : isWall(i, line)) {
+                    return free;
+                }
+            }
+            line += step;
+            free += size;
+        }
+        return distance;
+    }
+
+    private boolean isWall(int column, int row) {
+        return column < 0 || row < 0 || column >= columns || row >= rows || !open[row * columns + column];
+    }
+
+    /**
+     * Returns the tile next to {@code tile} in {@code direction}, or -1 if that is outside the map.
+     */
+    public int step(int tile, Direction direction) {
+        int column = column(tile) + direction.getDx();
+        int row = row(tile) + direction.getDy();
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+
+    /**
+     * Returns the number of steps from {@code tile} to {@code target}, or {@link Integer#MAX_VALUE}
+     * if there is no path.
+     */
+    public int distance(int tile, int target) {
+        short[] field = distances.get(target);
+        if (field == null) {
+            field = distanceField(target);
+            // Another thread may have computed the same field, which is harmless
+            distances.compareAndSet(target, null, field);
+        }
+        short distance = field[tile];
+        return distance == UNREACHABLE ? Integer.MAX_VALUE : distance;
+    }
+
+    private short[] distanceField(int target) {
+        short[] field = new short[columns * rows];
+        Arrays.fill(field, UNREACHABLE);
+        if (!open[target]) {
+            return field;
+        }
+        int[] queue = new int[columns * rows];
+        int head = 0;
+        int tail = 0;
+        field[target] = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int tile = queue[head++];
+            for (Direction direction : Direction.MOVES) {
+                int next = step(tile, direction);
+                if (isOpen(next) && field[next] == UNREACHABLE) {
+                    field[next] = (short) (field[tile] + 1);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return field;
+    }
+}
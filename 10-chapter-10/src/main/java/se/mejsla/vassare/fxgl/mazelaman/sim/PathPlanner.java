@@ -0,0 +1,269 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.Arrays;
+
+/**
+ * Finds the cheapest path from a start tile to the nearest of a set of goal tiles, using D* Lite. The search runs
+ * backwards from the goals, so when the start moves, when a goal is added or removed, or when the cost of a tile
+ * changes, only the part of the search that depends on the change is done again. A plan that is still valid costs
+ * nothing to keep.
+ * <p>
+ * Moving into a tile costs the cost of that tile, which is at least 1. The heuristic is the Manhattan distance,
+ * which never overestimates, as the maze has no wraparound.
+ * <p>
+ * The planner is not thread safe, and is meant to be owned by one bot.
+ */
+public final class PathPlanner {
+
+    public static final int INFINITY = Integer.MAX_VALUE / 4;
+
+    private final Maze maze;
+    private final int[] cost;
+    private final int[] g;
+    private final int[] rhs;
+    private final boolean[] goal;
+
+    // A binary heap of tiles, ordered by key, with the position of each tile in the heap or -1
+    private final int[] heap;
+    private final long[] keys;
+    private final int[] position;
+    private int size;
+
+    private int start = -1;
+    private int last;
+    private int km;
+    private long expansions;
+
+    public PathPlanner(Maze maze) {
+        int tiles = maze.getColumns() * maze.getRows();
+        this.maze = maze;
+        this.cost = new int[tiles];
+        this.g = new int[tiles];
+        this.rhs = new int[tiles];
+        this.goal = new boolean[tiles];
+        this.heap = new int[tiles];
+        this.keys = new long[tiles];
+        this.position = new int[tiles];
+        Arrays.fill(cost, 1);
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Sets the tile that paths start from, usually the tile the player is on.
+     */
+    public void setStart(int tile) {
+        if (start < 0) {
+            last = tile;
+        }
+        if (tile != start) {
+            // Instead of reordering the queue, raise the keys of everything added from now on
+            km += heuristic(last, tile);
+            last = tile;
+            start = tile;
+        }
+    }
+
+    public void setGoal(int tile, boolean isGoal) {
+        if (!maze.isOpen(tile) || goal[tile] == isGoal) {
+            return;
+        }
+        goal[tile] = isGoal;
+        rhs[tile] = isGoal ? 0 : lookahead(tile);
+        updateVertex(tile);
+    }
+
+    public boolean isGoal(int tile) {
+        return goal[tile];
+    }
+
+    /**
+     * Sets the cost of moving into {@code tile}, which must be at least 1.
+     */
+    public void setCost(int tile, int tileCost) {
+        if (cost[tile] == tileCost) {
+            return;
+        }
+        cost[tile] = tileCost;
+        // All edges into the tile have changed
+        for (Direction direction : Direction.MOVES) {
+            int neighbor = maze.step(tile, direction);
+            if (maze.isOpen(neighbor) && !goal[neighbor]) {
+                rhs[neighbor] = lookahead(neighbor);
+                updateVertex(neighbor);
+            }
+        }
+    }
+
+    public int getCost(int tile) {
+        return cost[tile];
+    }
+
+    /**
+     * Brings the plan up to date with the changes made since the last call.
+     */
+    public void plan() {
+        while (size > 0 && (keys[heap[0]] < key(start) || rhs[start] != g[start])) {
+            int tile = heap[0];
+            long oldKey = keys[tile];
+            long newKey = key(tile);
+            expansions++;
+            if (oldKey < newKey) {
+                // The key is out of date since the start moved
+                keys[tile] = newKey;
+                siftDown(0);
+            } else if (g[tile] > rhs[tile]) {
+                g[tile] = rhs[tile];
+                remove(tile);
+                for (Direction direction : Direction.MOVES) {
+                    int neighbor = maze.step(tile, direction);
+                    if (maze.isOpen(neighbor) && !goal[neighbor]) {
+                        rhs[neighbor] = Math.min(rhs[neighbor], cost[tile] + g[tile]);
+                        updateVertex(neighbor);
+                    }
+                }
+            } else {
+                g[tile] = INFINITY;
+                if (!goal[tile]) {
+                    rhs[tile] = lookahead(tile);
+                }
+                updateVertex(tile);
+                for (Direction direction : Direction.MOVES) {
+                    int neighbor = maze.step(tile, direction);
+                    if (maze.isOpen(neighbor) && !goal[neighbor]) {
+                        rhs[neighbor] = lookahead(neighbor);
+                        updateVertex(neighbor);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first step of the cheapest path from the start, or {@link Direction#NONE} if no goal can be
+     * reached. If several steps are equally good, {@code preferred} is chosen, so that the path does not zigzag.
+     */
+    public Direction next(Direction preferred) {
+        Direction best = Direction.NONE;
+        long bestCost = INFINITY;
+        for (Direction direction : Direction.MOVES) {
+            int neighbor = maze.step(start, direction);
+            if (!maze.isOpen(neighbor)) {
+                continue;
+            }
+            long total = (long) cost[neighbor] + g[neighbor];
+            if (total < bestCost || (total == bestCost && direction == preferred)) {
+                best = direction;
+                bestCost = total;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the cost of the cheapest path from the start to a goal, or {@link #INFINITY} if there is none.
+     */
+    public int getPathCost() {
+        return Math.min(g[start], INFINITY);
+    }
+
+    /**
+     * Returns the number of tiles taken from the queue since the planner was created, as a measure of work done.
+     */
+    public long getExpansions() {
+        return expansions;
+    }
+
+    private int lookahead(int tile) {
+        int best = INFINITY;
+        for (Direction direction : Direction.MOVES) {
+            int neighbor = maze.step(tile, direction);
+            if (maze.isOpen(neighbor)) {
+                best = Math.min(best, cost[neighbor] + g[neighbor]);
+            }
+        }
+        return Math.min(best, INFINITY);
+    }
+
+    private int heuristic(int from, int to) {
+        return Math.abs(maze.column(from) - maze.column(to)) + Math.abs(maze.row(from) - maze.row(to));
+    }
+
+    // The two parts of the key are packed into one long, so that keys compare in one step
+    private long key(int tile) {
+        long min = Math.min(g[tile], rhs[tile]);
+        // Before there is a start, keys without the heuristic are too low, which only means they are updated later
+        return (min + (start < 0 ? 0 : heuristic(start, tile)) + km) << 32 | min;
+    }
+
+    private void updateVertex(int tile) {
+        boolean inconsistent = g[tile] != rhs[tile];
+        if (inconsistent && position[tile] >= 0) {
+            long oldKey = keys[tile];
+            keys[tile] = key(tile);
+            if (keys[tile] < oldKey) {
+                siftUp(position[tile]);
+            } else {
+                siftDown(position[tile]);
+            }
+        } else if (inconsistent) {
+            keys[tile] = key(tile);
+            heap[size] = tile;
+            position[tile] = size;
+            siftUp(size++);
+        } else if (position[tile] >= 0) {
+            remove(tile);
+        }
+    }
+
+    private void remove(int tile) {
+        int index = position[tile];
+        position[tile] = -1;
+        size--;
+        if (index == size) {
+            return;
+        }
+        int moved = heap[size];
+        heap[index] = moved;
+        position[moved] = index;
+        siftUp(index);
+        siftDown(position[moved]);
+    }
+
+    private void siftUp(int index) {
+        int tile = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (keys[heap[parent]] <= keys[tile]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            position[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = tile;
+        position[tile] = index;
+    }
+
+    private void siftDown(int index) {
+        int tile = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (keys[tile] <= keys[heap[child]]) {
+                break;
+            }
+            heap[index] = heap[child];
+            position[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = tile;
+        position[tile] = index;
+    }
+}
@@ -0,0 +1,168 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.Arrays;
+
+/**
+ * A bot that plans its way to the nearest pill or cherry with a {@link PathPlanner}, and routes around ghosts that
+ * are not frightened by making the tiles near them expensive. The plan is kept between frames, and only the changes
+ * are passed to the planner: the tile the player is on, pills that have been eaten, cherries that come and go, and
+ * the tiles whose cost changed because a ghost moved to another tile. In most frames nothing has changed, and the
+ * bot only reads the next step from the plan.
+ */
+public final class PlannerBot {
+
+    private static final int DANGER_RADIUS = 4;
+    private static final int DANGER_COST = 60;
+
+    private LevelData levelData;
+    private Maze maze;
+    private PathPlanner planner;
+    private int[] goals;
+    private boolean[] pillEaten;
+    private boolean[] cherry;
+    private int pillsRemaining;
+    private int[] ghostTiles;
+
+    // The danger of each tile, and the tiles that have any
+    private int[] danger;
+    private int[] newDanger;
+    private int[] dangerTiles;
+    private int dangerCount;
+    private int[] queue;
+    private int[] depth;
+    private int[] visited;
+    private int visit;
+
+    /**
+     * Returns the action to take in the current frame of {@code game}.
+     */
+    public int act(Game game) {
+        if (game.getLevelData() != levelData || game.getPillsRemaining() > pillsRemaining) {
+            init(game);
+        }
+        updatePills(game);
+        updateCherries(game);
+        updateGhosts(game);
+        planner.setStart(maze.tileOf(game.getPlayerX(), game.getPlayerY()));
+        planner.plan();
+        return GreedyBot.action(planner.next(game.getPlayerFacing()));
+    }
+
+    public PathPlanner getPlanner() {
+        return planner;
+    }
+
+    private void init(Game game) {
+        levelData = game.getLevelData();
+        maze = levelData.getMaze();
+        planner = new PathPlanner(maze);
+        int tiles = maze.getColumns() * maze.getRows();
+        goals = new int[tiles];
+        pillEaten = new boolean[game.getPillCount()];
+        for (int i = 0; i < game.getPillCount(); i++) {
+            addGoal(maze.tileOf(game.getPillX(i), game.getPillY(i)), 1);
+        }
+        pillsRemaining = game.getPillCount();
+        cherry = new boolean[game.getCherrySpawnCount()];
+        ghostTiles = new int[game.getGhostCount()];
+        Arrays.fill(ghostTiles, -2);
+        danger = new int[tiles];
+        newDanger = new int[tiles];
+        dangerTiles = new int[tiles];
+        dangerCount = 0;
+        queue = new int[tiles];
+        depth = new int[tiles];
+        visited = new int[tiles];
+    }
+
+    private void updatePills(Game game) {
+        if (game.getPillsRemaining() == pillsRemaining) {
+            return;
+        }
+        pillsRemaining = game.getPillsRemaining();
+        for (int i = 0; i < pillEaten.length; i++) {
+            if (game.isPillEaten(i) && !pillEaten[i]) {
+                pillEaten[i] = true;
+                addGoal(maze.tileOf(game.getPillX(i), game.getPillY(i)), -1);
+            }
+        }
+    }
+
+    private void updateCherries(Game game) {
+        for (int i = 0; i < cherry.length; i++) {
+            if (game.hasCherry(i) != cherry[i]) {
+                cherry[i] = !cherry[i];
+                addGoal(maze.tileOf(game.getCherryX(i), game.getCherryY(i)), cherry[i] ? 1 : -1);
+            }
+        }
+    }
+
+    private void addGoal(int tile, int count) {
+        goals[tile] += count;
+        planner.setGoal(tile, goals[tile] > 0);
+    }
+
+    // The danger zones are only computed again when a ghost has moved to another tile, or changed mode
+    private void updateGhosts(Game game) {
+        boolean moved = false;
+        for (int i = 0; i < ghostTiles.length; i++) {
+            GhostMotion ghost = game.getGhost(i);
+            int tile = game.isGhostFrightened(i) ? -1 : maze.tileOf(ghost.getX(), ghost.getY());
+            if (tile != ghostTiles[i]) {
+                ghostTiles[i] = tile;
+                moved = true;
+            }
+        }
+        if (!moved) {
+            return;
+        }
+
+        for (int tile : ghostTiles) {
+            if (tile >= 0) {
+                spreadDanger(tile);
+            }
+        }
+        // The list holds the tiles that were dangerous before, followed by the tiles that have become dangerous
+        int kept = 0;
+        for (int i = 0; i < dangerCount; i++) {
+            int tile = dangerTiles[i];
+            if (danger[tile] != newDanger[tile]) {
+                danger[tile] = newDanger[tile];
+                planner.setCost(tile, 1 + danger[tile]);
+            }
+            newDanger[tile] = 0;
+            if (danger[tile] > 0) {
+                dangerTiles[kept++] = tile;
+            }
+        }
+        dangerCount = kept;
+    }
+
+    // Adds danger around a ghost to newDanger, higher the closer to the ghost, and lists the tiles it touches
+    private void spreadDanger(int ghostTile) {
+        int head = 0;
+        int tail = 0;
+        visit++;
+        visited[ghostTile] = visit;
+        queue[tail++] = ghostTile;
+        depth[ghostTile] = 0;
+        while (head < tail) {
+            int tile = queue[head++];
+            if (newDanger[tile] == 0 && danger[tile] == 0) {
+                dangerTiles[dangerCount++] = tile;
+            }
+            newDanger[tile] += DANGER_COST * (DANGER_RADIUS + 1 - depth[tile]);
+            if (depth[tile] == DANGER_RADIUS) {
+                continue;
+            }
+            for (Direction direction : Direction.MOVES) {
+                int next = maze.step(tile, direction);
+                if (maze.isOpen(next) && visited[next] != visit) {
+                    visited[next] = visit;
+                    depth[next] = depth[tile] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+}
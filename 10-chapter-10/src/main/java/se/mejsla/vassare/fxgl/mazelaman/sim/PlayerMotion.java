@@ -0,0 +1,163 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+/**
+ * Moves the player from tile to tile through the maze, without a physics body. The player keeps going in the same
+ * direction until it reaches a wall, and always stops exactly on a tile. A turn is remembered until the tile in that
+ * direction is open, and a turn that comes a few pixels too early or too late is still taken, by moving the player
+ * onto the crossing first.
+ */
+public final class PlayerMotion {
+
+    private static final double CORNER_ASSIST = 6.0;
+
+    private double startX;
+    private double startY;
+
+    private double x;
+    private double y;
+    private Direction direction;
+    private Direction wanted;
+    private Direction facing;
+
+    public PlayerMotion(double x, double y) {
+        init(x, y);
+    }
+
+    /**
+     * Moves the player to a new start position, and forgets where it was going, as if it had just been created.
+     */
+    public void init(double x, double y) {
+        startX = x;
+        startY = y;
+        reset();
+    }
+
+    public void reset() {
+        x = startX;
+        y = startY;
+        direction = Direction.NONE;
+        wanted = Direction.NONE;
+        facing = Direction.NONE;
+    }
+
+    /**
+     * Asks the player to go in {@code wanted} direction as soon as possible.
+     */
+    public void turn(Direction wanted) {
+        this.wanted = wanted;
+    }
+
+    /**
+     * Moves the player {@code distance} pixels. Any number of tiles may be passed in one call, as the player is swept
+     * against the walls and stops where it first touches one. Returns the fraction of {@code distance} that the
+     * player travelled before it ran into a wall, or 1.0 if it did not run into one, so the time of impact within a
+     * frame is the returned fraction times the frame time.
+     */
+    public double advance(double distance, Maze maze) {
+        double left = distance;
+        double travelled = 0.0;
+        alignToGrid(maze);
+        while (true) {
+            tryTurn(maze, maze.tileOf(x, y));
+            if (direction == Direction.NONE || left <= 0.0) {
+                return 1.0;
+            }
+            // A waiting turn must be tried on every tile, otherwise the player can run straight to the next wall
+            double toNextTile = distanceToNextTile(maze);
+            double limit = wanted == Direction.NONE || wanted == direction ? left : Math.min(left, toNextTile);
+            double moved = maze.sweep(x, y, direction, limit);
+            double startX = x;
+            double startY = y;
+            x += direction.getDx() * moved;
+            y += direction.getDy() * moved;
+            left -= moved;
+            if (moved < limit || moved == toNextTile) {
+                x = Math.round(x / maze.getTileWidth()) * (double) maze.getTileWidth();
+                y = Math.round(y / maze.getTileHeight()) * (double) maze.getTileHeight();
+            }
+            // Snapping to the tile may move the player a little more or less than the sweep did
+            travelled += direction.getDx() * (x - startX) + direction.getDy() * (y - startY);
+            if (moved < limit) {
+                direction = Direction.NONE;
+                return Math.max(0.0, Math.min(1.0, travelled / distance));
+            }
+        }
+    }
+
+    private void tryTurn(Maze maze, int tile) {
+        if (wanted == Direction.NONE || wanted == direction) {
+            return;
+        }
+        if (wanted == direction.opposite()) {
+            // Turning around is always possible, since the player came from there
+            setDirection(wanted);
+            return;
+        }
+        double offset = direction.getDx() != 0 ? x - maze.x(tile) : y - maze.y(tile);
+        if (Math.abs(offset) <= CORNER_ASSIST && maze.isOpen(maze.step(tile, wanted))) {
+            x = maze.x(tile);
+            y = maze.y(tile);
+            setDirection(wanted);
+        }
+    }
+
+    private void setDirection(Direction direction) {
+        this.direction = direction;
+        this.facing = direction;
+    }
+
+    // The player must always be in line with the tiles it is moving between
+    private void alignToGrid(Maze maze) {
+        boolean alignedX = x % maze.getTileWidth() == 0.0;
+        boolean alignedY = y % maze.getTileHeight() == 0.0;
+        if ((!alignedX && !alignedY) || (!alignedX && direction.getDx() == 0)
+                || (!alignedY && direction.getDy() == 0)) {
+            int tile = maze.tileOf(x, y);
+            x = maze.x(tile);
+            y = maze.y(tile);
+        }
+    }
+
+    private double distanceToNextTile(Maze maze) {
+        double size = direction.getDx() != 0 ? maze.getTileWidth() : maze.getTileHeight();
+        double offset = direction.getDx() != 0 ? x % size : y % size;
+        if (direction.getDx() + direction.getDy() > 0) {
+            return size - offset;
+        }
+        return offset == 0.0 ? size : offset;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Returns the direction the player is moving in, or {@link Direction#NONE} if it is standing still.
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Returns the direction the player last moved in, which is where it is looking even when standing still.
+     */
+    public Direction getFacing() {
+        return facing;
+    }
+
+    public Direction getWanted() {
+        return wanted;
+    }
+
+    public void restore(double x, double y, Direction direction, Direction wanted, Direction facing) {
+        this.x = x;
+        this.y = y;
+        this.direction = direction;
+        this.wanted = wanted;
+        this.facing = facing;
+    }
+}
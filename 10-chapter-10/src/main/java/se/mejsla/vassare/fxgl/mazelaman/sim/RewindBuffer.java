@@ -0,0 +1,186 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.List;
+
+/**
+ * Keeps the last ticks of a {@link Game}, or of anything else that is {@link Stateful}, so that it can be rewound to
+ * any of them.
+ * <p>
+ * Every {@code keyframeInterval} ticks the full game state is stored as a keyframe. The ticks in between are stored
+ * as the words that changed since the tick before, in a circular delta log. Restoring a tick starts from the keyframe
+ * before it and applies at most {@code keyframeInterval - 1} deltas. All memory is allocated up front: if the ticks
+ * change more than the delta log can hold, the oldest ticks are dropped instead. Capturing a tick does not allocate.
+ */
+public final class RewindBuffer {
+
+    private static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+    // Room for this many changed words per tick on average, before old ticks start to be dropped
+    private static final int DEFAULT_DELTA_WORDS = 16;
+
+    private final Stateful game;
+    private final int capacity;
+    private final int keyframeInterval;
+    private final int stateSize;
+
+    private final long[][] keyframes;
+    private final long[] keyframeTicks;
+
+    // Start of each tick's delta in the delta log, counted from the first word ever written
+    private final long[] deltaStarts;
+    private final int[] deltaIndices;
+    private final long[] deltaValues;
+    private long deltaEnd;
+
+    private final long[] previous;
+    private final long[] current;
+
+    private long baseTick = -1;
+    private long oldestTick = -1;
+    private long newestTick = -1;
+
+    public RewindBuffer(Game game, List<LevelData> levels, int capacity) {
+        this(game, Game.maxStateSize(levels), capacity);
+    }
+
+    /**
+     * Creates a buffer for the last {@code capacity} ticks of {@code game}, whose states are at most
+     * {@code stateSize} words.
+     */
+    public RewindBuffer(Stateful game, int stateSize, int capacity) {
+        this(game, stateSize, capacity, DEFAULT_KEYFRAME_INTERVAL, DEFAULT_DELTA_WORDS);
+    }
+
+    public RewindBuffer(Stateful game, int stateSize, int capacity, int keyframeInterval, int deltaWordsPerTick) {
+        this.game = game;
+        this.capacity = capacity;
+        this.keyframeInterval = keyframeInterval;
+        this.stateSize = stateSize;
+
+        int keyframeCount = capacity / keyframeInterval + 2;
+        this.keyframes = new long[keyframeCount][stateSize];
+        this.keyframeTicks = new long[keyframeCount];
+        this.deltaStarts = new long[capacity];
+        this.deltaIndices = new int[capacity * deltaWordsPerTick];
+        this.deltaValues = new long[capacity * deltaWordsPerTick];
+        this.previous = new long[stateSize];
+        this.current = new long[stateSize];
+    }
+
+    /**
+     * Records the current state of the game, which should be called once per step.
+     * If the game has been restored or reset to an earlier tick, all later ticks are dropped first.
+     */
+    public void capture() {
+        long tick = game.getFrame();
+        if (newestTick >= 0 && (tick <= newestTick || tick > newestTick + 1)) {
+            truncate(tick - 1);
+        }
+
+        game.writeState(current);
+        if (newestTick < 0) {
+            baseTick = tick;
+            oldestTick = tick;
+        }
+        if (tick == baseTick || tick % keyframeInterval == 0) {
+            int slot = keyframeSlot(tick);
+            System.arraycopy(current, 0, keyframes[slot], 0, stateSize);
+            keyframeTicks[slot] = tick;
+            deltaStarts[tickSlot(tick)] = deltaEnd;
+        } else {
+            deltaStarts[tickSlot(tick)] = deltaEnd;
+            for (int i = 0; i < stateSize; i++) {
+                if (current[i] != previous[i]) {
+                    int position = (int) (deltaEnd % deltaIndices.length);
+                    deltaIndices[position] = i;
+                    deltaValues[position] = current[i];
+                    deltaEnd++;
+                }
+            }
+        }
+        System.arraycopy(current, 0, previous, 0, stateSize);
+
+        newestTick = tick;
+        dropUnrestorableTicks();
+    }
+
+    /**
+     * Restores the game to {@code tick}, which must be between {@link #getOldestTick()} and {@link #getNewestTick()}.
+     * The history is kept until the game is stepped and captured again, so it is possible to scrub back and forth.
+     */
+    public void restore(long tick) {
+        decode(tick, current);
+        game.readState(current);
+    }
+
+    /**
+     * Rewinds the game {@code ticks} ticks, or as far as possible.
+     */
+    public void rewind(int ticks) {
+        restore(Math.max(oldestTick, newestTick - ticks));
+    }
+
+    public long getOldestTick() {
+        return oldestTick;
+    }
+
+    public long getNewestTick() {
+        return newestTick;
+    }
+
+    private void decode(long tick, long[] state) {
+        if (tick < oldestTick || tick > newestTick) {
+            throw new IllegalArgumentException("Tick " + tick + " is not in [" + oldestTick + ", " + newestTick + "]");
+        }
+        long keyframeTick = keyframeTickOf(tick);
+        System.arraycopy(keyframes[keyframeSlot(keyframeTick)], 0, state, 0, stateSize);
+        for (long t = keyframeTick + 1; t <= tick; t++) {
+            long end = t == newestTick ? deltaEnd : deltaStarts[tickSlot(t + 1)];
+            for (long d = deltaStarts[tickSlot(t)]; d < end; d++) {
+                int position = (int) (d % deltaIndices.length);
+                state[deltaIndices[position]] = deltaValues[position];
+            }
+        }
+    }
+
+    private void truncate(long tick) {
+        if (tick < oldestTick || tick >= newestTick) {
+            // Nothing to continue from, start over
+            oldestTick = -1;
+            newestTick = -1;
+            return;
+        }
+        decode(tick, previous);
+        deltaEnd = deltaStarts[tickSlot(tick + 1)];
+        newestTick = tick;
+    }
+
+    // A tick can only be restored while its keyframe and all deltas after the keyframe are still in the buffers,
+    // and the oldest keyframe is also used by the ticks after it
+    private void dropUnrestorableTicks() {
+        long oldestSlotTick = newestTick - capacity + 1;
+        while (oldestTick < newestTick) {
+            long keyframeTick = keyframeTickOf(oldestTick);
+            boolean keyframeKept = keyframeTicks[keyframeSlot(keyframeTick)] == keyframeTick;
+            boolean deltasKept = keyframeTick == newestTick
+                    || (keyframeTick + 1 >= oldestSlotTick
+                    && deltaStarts[tickSlot(keyframeTick + 1)] >= deltaEnd - deltaIndices.length);
+            if (oldestTick >= oldestSlotTick && keyframeKept && deltasKept) {
+                break;
+            }
+            oldestTick++;
+        }
+    }
+
+    // The first tick captured is always a keyframe, even if it is not on the keyframe interval
+    private long keyframeTickOf(long tick) {
+        return Math.max(tick - tick % keyframeInterval, baseTick);
+    }
+
+    private int keyframeSlot(long tick) {
+        return (int) ((tick / keyframeInterval) % keyframes.length);
+    }
+
+    private int tickSlot(long tick) {
+        return (int) (tick % capacity);
+    }
+}
@@ -0,0 +1,44 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.Random;
+
+/**
+ * A SplitMix64 random generator whose whole state is a single long that can be read and restored,
+ * which {@link Random} does not allow. Not thread safe.
+ */
+public final class Rng extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private long state;
+
+    public Rng(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        state = seed;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    @Override
+    public long nextLong() {
+        long z = state += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+}
@@ -0,0 +1,90 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves and restores a running {@link Game}, or the world of the app, as a small binary file.
+ * <p>
+ * The file holds a header followed by the words from {@link Stateful#writeState}. Levels are referred to by number,
+ * and the game restores them from the level data it already has, so no TMX file is parsed on restore.
+ * Saving writes to a temporary file first, so a crash never leaves a half written save behind.
+ */
+public final class SaveGame {
+
+    private static final int MAGIC = 0x4D5A4C4D; // "MZLM"
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+
+    private SaveGame() {
+    }
+
+    public static void save(Stateful game, Path path) throws IOException {
+        long[] state = new long[game.stateSize()];
+        game.writeState(state);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + state.length * Long.BYTES);
+        buffer.putInt(MAGIC).putShort(VERSION).putInt(state.length);
+        buffer.asLongBuffer().put(state);
+        buffer.rewind();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores {@code game} from a file written by {@link #save}. The game must have been created with the same levels.
+     *
+     * @throws IOException If the file cannot be read, or is not a save file for these levels.
+     */
+    public static void restore(Stateful game, Path path) throws IOException {
+        long[] state = read(path);
+        if (game.stateSize(state) != state.length) {
+            throw new IOException("Save file does not match the levels of this game: " + path);
+        }
+        game.readState(state);
+    }
+
+    /**
+     * Reads the state words from a file written by {@link #save}, for a game that must know the level before it can
+     * restore the state.
+     *
+     * @throws IOException If the file cannot be read, or is not a save file.
+     */
+    public static long[] read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the file ends
+            }
+        }
+        buffer.flip();
+
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a save file: " + path);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported save file version " + version + ": " + path);
+        }
+        int words = buffer.getInt();
+        if (words < 0 || buffer.remaining() != words * Long.BYTES) {
+            throw new IOException("Truncated save file: " + path);
+        }
+        long[] state = new long[words];
+        buffer.asLongBuffer().get(state);
+        return state;
+    }
+}
@@ -0,0 +1,33 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+/**
+ * A game whose complete dynamic state can be written to and read from an array of words, for saving and rewinding.
+ * {@link Game} is one, and so is the world of the FXGL app.
+ */
+public interface Stateful {
+
+    /**
+     * Returns the number of steps taken, which goes up by one for each step.
+     */
+    long getFrame();
+
+    /**
+     * Returns the number of words {@link #writeState} writes now.
+     */
+    int stateSize();
+
+    /**
+     * Returns the number of words that {@code state} should have, or -1 if it cannot be read by this game.
+     */
+    int stateSize(long[] state);
+
+    /**
+     * Writes the complete dynamic state into {@code state}, and clears the rest of the array.
+     */
+    void writeState(long[] state);
+
+    /**
+     * Restores a state written by {@link #writeState}.
+     */
+    void readState(long[] state);
+}
@@ -0,0 +1,62 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+/**
+ * A tileset from a TMX file. Tiles are numbered from {@code firstGid}, left to right and top to bottom in the image.
+ */
+public final class Tileset {
+
+    private final int firstGid;
+    private final String image;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int columns;
+    private final int spacing;
+    private final int margin;
+
+    public Tileset(int firstGid, String image, int tileWidth, int tileHeight, int columns, int spacing, int margin) {
+        this.firstGid = firstGid;
+        this.image = image;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.columns = columns;
+        this.spacing = spacing;
+        this.margin = margin;
+    }
+
+    public int getFirstGid() {
+        return firstGid;
+    }
+
+    /**
+     * Returns the file name of the tileset image, relative to the level file.
+     */
+    public String getImage() {
+        return image;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the x coordinate of tile {@code gid} in the tileset image.
+     */
+    public int tileX(int gid) {
+        return margin + ((gid - firstGid) % columns) * (tileWidth + spacing);
+    }
+
+    /**
+     * Returns the y coordinate of tile {@code gid} in the tileset image.
+     */
+    public int tileY(int gid) {
+        return margin + ((gid - firstGid) / columns) * (tileHeight + spacing);
+    }
+}
@@ -0,0 +1,175 @@
+package se.mejsla.vassare.fxgl.mazelaman.sim;
+
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * A Gym style environment that runs a number of independent headless games in lock-step on a worker pool.
+ * The games are split in one contiguous chunk per thread. The calling thread steps the first chunk, and persistent
+ * worker threads step the others, meeting it at a barrier at the start and end of each step, so that no tasks or
+ * futures are created per step.
+ * <p>
+ * Observations, rewards and done flags are written into buffers that are allocated once, in the constructor.
+ * Observations hold one byte per tile and game, see {@link Game#observe}. A game that is done is reset
+ * automatically at the start of the next step, using a seed drawn from its own random generator,
+ * so a whole run is reproducible from the seed given to {@link #reset}.
+ */
+public final class VectorEnv implements AutoCloseable {
+
+    private final Game[] games;
+    private final int observationSize;
+    private final byte[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final int[] chunks;
+    private final Thread[] workers;
+    private final CyclicBarrier started;
+    private final CyclicBarrier finished;
+
+    private int[] actions;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    public VectorEnv(List<LevelData> levels, int numGames, int numThreads) {
+        this.observationSize = Game.observationSize(levels.get(0));
+        for (LevelData level : levels) {
+            if (Game.observationSize(level) != observationSize) {
+                throw new IllegalArgumentException("All levels must have the same size: " + level.getName());
+            }
+        }
+
+        this.games = new Game[numGames];
+        for (int i = 0; i < numGames; i++) {
+            games[i] = new Game(levels);
+        }
+        this.observations = new byte[numGames * observationSize];
+        this.rewards = new float[numGames];
+        this.dones = new boolean[numGames];
+
+        int threads = Math.max(1, Math.min(numThreads, numGames));
+        this.chunks = new int[threads + 1];
+        for (int t = 0; t <= threads; t++) {
+            chunks[t] = (int) ((long) numGames * t / threads);
+        }
+        this.started = new CyclicBarrier(threads);
+        this.finished = new CyclicBarrier(threads);
+        this.workers = new Thread[threads - 1];
+        for (int w = 0; w < workers.length; w++) {
+            int chunk = w + 1;
+            workers[w] = new Thread(() -> work(chunk), "vector-env-" + chunk);
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+    }
+
+    private void work(int chunk) {
+        try {
+            while (true) {
+                started.await();
+                if (closed) {
+                    return;
+                }
+                try {
+                    stepRange(chunks[chunk], chunks[chunk + 1]);
+                } catch (RuntimeException | Error e) {
+                    failure = e;
+                }
+                finished.await();
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            // The environment has been closed
+        }
+    }
+
+    /**
+     * Resets all games, game i with seed {@code seed + i}, and writes the initial observations.
+     */
+    public void reset(long seed) {
+        for (int i = 0; i < games.length; i++) {
+            games[i].reset(seed + i);
+            games[i].observe(observations, i * observationSize);
+            rewards[i] = 0.0f;
+            dones[i] = false;
+        }
+    }
+
+    /**
+     * Steps every game one frame with the corresponding action, one of the {@link Game} action constants.
+     */
+    public void step(int[] actions) {
+        if (actions.length != games.length) {
+            throw new IllegalArgumentException("Expected " + games.length + " actions, got " + actions.length);
+        }
+        if (closed) {
+            throw new IllegalStateException("The environment has been closed");
+        }
+        this.actions = actions;
+        if (workers.length == 0) {
+            stepRange(0, games.length);
+            return;
+        }
+        try {
+            started.await();
+            try {
+                stepRange(chunks[0], chunks[1]);
+            } finally {
+                finished.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stepping", e);
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("Failed to step", e);
+        }
+        Throwable workerFailure = failure;
+        if (workerFailure != null) {
+            failure = null;
+            throw new IllegalStateException("Failed to step", workerFailure);
+        }
+    }
+
+    private void stepRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Game game = games[i];
+            if (dones[i]) {
+                game.reset(game.nextSeed());
+            }
+            rewards[i] = game.step(actions[i]);
+            dones[i] = game.isOver();
+            game.observe(observations, i * observationSize);
+        }
+    }
+
+    public int getNumGames() {
+        return games.length;
+    }
+
+    public int getObservationSize() {
+        return observationSize;
+    }
+
+    public byte[] getObservations() {
+        return observations;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public Game getGame(int i) {
+        return games[i];
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Packs all sprites in a directory into one atlas image, and writes an index with the position of each sprite.
+ * The sprites are placed on shelves, tallest first. Run with {@code mvn -Patlas process-classes}, or directly:
+ * <pre>
+ * AtlasPacker src/main/resources/assets/textures
+ * </pre>
+ */
+public final class AtlasPacker {
+
+    public static final String ATLAS_IMAGE = "atlas.png";
+    public static final String ATLAS_INDEX = "atlas.txt";
+
+    private static final int ATLAS_WIDTH = 256;
+    // Keep a transparent pixel between sprites so that filtering does not bleed into the neighbours
+    private static final int PADDING = 1;
+
+    private AtlasPacker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: AtlasPacker <textures directory>");
+            System.exit(1);
+        }
+        pack(Paths.get(args[0]));
+    }
+
+    public static void pack(Path directory) throws IOException {
+        List<Sprite> sprites = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(AtlasPacker::isSprite).sorted().collect(Collectors.toList())) {
+                sprites.add(new Sprite(file.getFileName().toString(), ImageIO.read(file.toFile())));
+            }
+        }
+        sprites.sort(Comparator.comparingInt((Sprite sprite) -> sprite.image.getHeight()).reversed()
+                .thenComparing(sprite -> sprite.name));
+
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+        for (Sprite sprite : sprites) {
+            if (x + sprite.image.getWidth() > ATLAS_WIDTH) {
+                x = 0;
+                y += shelfHeight + PADDING;
+                shelfHeight = 0;
+            }
+            sprite.x = x;
+            sprite.y = y;
+            x += sprite.image.getWidth() + PADDING;
+            shelfHeight = Math.max(shelfHeight, sprite.image.getHeight());
+        }
+
+        BufferedImage atlas = new BufferedImage(ATLAS_WIDTH, y + shelfHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = atlas.createGraphics();
+        for (Sprite sprite : sprites) {
+            graphics.drawImage(sprite.image, sprite.x, sprite.y, null);
+        }
+        graphics.dispose();
+        ImageIO.write(atlas, "png", directory.resolve(ATLAS_IMAGE).toFile());
+
+        sprites.sort(Comparator.comparing(sprite -> sprite.name));
+        Path index = directory.resolve(ATLAS_INDEX);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(index, StandardCharsets.UTF_8))) {
+            writer.println("# Generated by AtlasPacker, do not edit: name x y width height");
+            for (Sprite sprite : sprites) {
+                writer.println(sprite.name + " " + sprite.x + " " + sprite.y + " "
+                        + sprite.image.getWidth() + " " + sprite.image.getHeight());
+            }
+        }
+        System.out.println("Packed " + sprites.size() + " sprites into " + directory.resolve(ATLAS_IMAGE));
+    }
+
+    private static boolean isSprite(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".png") && !name.equals(ATLAS_IMAGE);
+    }
+
+    private static final class Sprite {
+
+        private final String name;
+        private final BufferedImage image;
+        private int x;
+        private int y;
+
+        private Sprite(String name, BufferedImage image) {
+            this.name = name;
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+import se.mejsla.vassare.fxgl.mazelaman.sim.PlannerBot;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lets {@link PlannerBot} play seeded headless games of each level, and reports how often it clears the level and
+ * how long it takes to plan each frame. The games are played on one thread, so that the timings are not disturbed
+ * by other work. For comparison, the tool also reports the work of planning from scratch at the start of a level,
+ * which is what the bot would do every frame without incremental replanning.
+ * <p>
+ * Usage: BotBenchmark [games per level]
+ */
+public final class BotBenchmark {
+
+    private static final int DEFAULT_GAMES = 200;
+    private static final long MAX_FRAMES_PER_GAME = 60L * 60 * 10;
+
+    private BotBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        for (LevelData levelData : LevelData.loadAll()) {
+            Game game = new Game(List.of(levelData));
+            long[] nanos = new long[1024];
+            int frames = 0;
+            int cleared = 0;
+            long clearFrames = 0;
+            long expansions = 0;
+            long fullPlan = 0;
+            for (int seed = 0; seed < games; seed++) {
+                PlannerBot bot = new PlannerBot();
+                game.reset(seed);
+                while (!game.isOver() && game.getFrame() < MAX_FRAMES_PER_GAME) {
+                    long start = System.nanoTime();
+                    int action = bot.act(game);
+                    long elapsed = System.nanoTime() - start;
+                    if (frames == nanos.length) {
+                        nanos = Arrays.copyOf(nanos, frames * 2);
+                    }
+                    nanos[frames++] = elapsed;
+                    if (game.getFrame() == 0) {
+                        fullPlan = bot.getPlanner().getExpansions();
+                    }
+                    game.step(action);
+                }
+                expansions += bot.getPlanner().getExpansions();
+                // With only one level, the end of the game means that the level was cleared
+                if (game.isEndOfGame()) {
+                    cleared++;
+                    clearFrames += game.getFrame();
+                }
+            }
+
+            // The first frames are left out of the timings, as the JIT compiler is still warming up
+            long[] timed = Arrays.copyOfRange(nanos, Math.min(frames, frames / 10), frames);
+            Arrays.sort(timed);
+            System.out.printf("%s: cleared %d of %d games (%.1f%%), in %.1f s on average%n",
+                    levelData.getName(), cleared, games, 100.0 * cleared / games,
+                    cleared > 0 ? clearFrames * Game.TPF / cleared : 0.0);
+            System.out.printf("  planning per frame: mean %.2f us, p50 %.2f us, p99 %.2f us, max %.1f us%n",
+                    Arrays.stream(timed).average().orElse(0.0) / 1000.0,
+                    percentile(timed, 50) / 1000.0, percentile(timed, 99) / 1000.0,
+                    (timed.length > 0 ? timed[timed.length - 1] : 0) / 1000.0);
+            System.out.printf("  tiles expanded per frame: %.2f, versus %d to plan from scratch%n",
+                    (double) expansions / frames, fullPlan);
+        }
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+}
@@ -0,0 +1,152 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import se.mejsla.vassare.fxgl.mazelaman.SpatialHash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares finding the player's collisions with a {@link SpatialHash} against checking all pairs of collidable
+ * entities, which is what the general collision pass of the physics world does. The dynamic entities are boxes
+ * of one tile that move a few pixels each frame, like ghosts.
+ */
+public final class CollisionBenchmark {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final double SIZE = 20.0;
+    private static final int WARMUP_FRAMES = 2_000;
+    private static final int FRAMES = 5_000;
+
+    private CollisionBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        for (int count : new int[]{10, 100, 1_000}) {
+            // Run twice, and only report the second run, to let the JIT compiler do its job
+            run(count, false);
+            run(count, true);
+        }
+    }
+
+    private static void run(int count, boolean report) {
+        Box[] boxes = createBoxes(count, new Random(count));
+        Box player = boxes[0];
+
+        long allPairsHits = 0;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            if (frame == WARMUP_FRAMES) {
+                start = System.nanoTime();
+                allPairsHits = 0;
+            }
+            move(boxes, frame);
+            allPairsHits += allPairs(boxes);
+        }
+        double allPairsNanos = (System.nanoTime() - start) / (double) FRAMES;
+
+        boxes = createBoxes(count, new Random(count));
+        player = boxes[0];
+        SpatialHash<Box> hash = new SpatialHash<>(SIZE, 1024);
+        for (int i = 1; i < boxes.length; i++) {
+            hash.update(boxes[i], boxes[i].centerX(), boxes[i].centerY());
+        }
+        List<Box> candidates = new ArrayList<>();
+        long gridHits = 0;
+        long reinserts = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            if (frame == WARMUP_FRAMES) {
+                start = System.nanoTime();
+                gridHits = 0;
+                reinserts = 0;
+            }
+            move(boxes, frame);
+            for (int i = 1; i < boxes.length; i++) {
+                if (hash.update(boxes[i], boxes[i].centerX(), boxes[i].centerY())) {
+                    reinserts++;
+                }
+            }
+            hash.query(player.centerX(), player.centerY(), candidates);
+            for (Box candidate : candidates) {
+                if (player.overlaps(candidate)) {
+                    gridHits++;
+                }
+            }
+            candidates.clear();
+        }
+        double gridNanos = (System.nanoTime() - start) / (double) FRAMES;
+
+        if (report) {
+            System.out.printf("%5d entities: all pairs %10.0f ns/frame, grid %8.0f ns/frame (%.1fx), "
+                            + "player hits %d/%d, reinserts %.1f/frame%n",
+                    count, allPairsNanos, gridNanos, allPairsNanos / gridNanos,
+                    allPairsHits, gridHits, reinserts / (double) FRAMES);
+        }
+    }
+
+    // Only pairs with the player have a collision handler, but all pairs are tested for overlap
+    private static int allPairs(Box[] boxes) {
+        int hits = 0;
+        for (int i = 0; i < boxes.length; i++) {
+            for (int j = i + 1; j < boxes.length; j++) {
+                if (boxes[i].overlaps(boxes[j]) && i == 0) {
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static Box[] createBoxes(int count, Random random) {
+        Box[] boxes = new Box[count + 1];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = new Box(random.nextDouble() * (WIDTH - SIZE), random.nextDouble() * (HEIGHT - SIZE),
+                    random.nextInt(4));
+        }
+        return boxes;
+    }
+
+    // Move like ghosts at 100 pixels per second, turning now and then and bouncing off the edges
+    private static void move(Box[] boxes, int frame) {
+        for (int i = 0; i < boxes.length; i++) {
+            Box box = boxes[i];
+            if ((frame + i) % 60 == 0) {
+                box.direction = (box.direction + 1 + (i & 1) * 2) % 4;
+            }
+            double distance = 100.0 / 60.0;
+            box.x += box.direction == 0 ? distance : box.direction == 2 ? -distance : 0;
+            box.y += box.direction == 1 ? distance : box.direction == 3 ? -distance : 0;
+            if (box.x < 0 || box.x > WIDTH - SIZE || box.y < 0 || box.y > HEIGHT - SIZE) {
+                box.x = Math.max(0, Math.min(WIDTH - SIZE, box.x));
+                box.y = Math.max(0, Math.min(HEIGHT - SIZE, box.y));
+                box.direction = (box.direction + 2) % 4;
+            }
+        }
+    }
+
+    private static final class Box {
+
+        private double x;
+        private double y;
+        private int direction;
+
+        private Box(double x, double y, int direction) {
+            this.x = x;
+            this.y = y;
+            this.direction = direction;
+        }
+
+        private double centerX() {
+            return x + SIZE / 2;
+        }
+
+        private double centerY() {
+            return y + SIZE / 2;
+        }
+
+        private boolean overlaps(Box other) {
+            return x < other.x + SIZE && other.x < x + SIZE && y < other.y + SIZE && other.y < y + SIZE;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Maze;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many seeded headless games of each level with random input, counts where on the maze the player dies and
+ * where pills are eaten, and draws the counts as heatmaps over the level. Each level is played on its own, so the
+ * game ends when the level is cleared or the lives are gone.
+ * <p>
+ * The games are split over one worker per core. Each worker counts into its own arrays, which are only added
+ * together when all workers are done, so the workers never wait for each other.
+ * <p>
+ * Usage: DeathHeatmap [games per level] [output directory]
+ */
+public final class DeathHeatmap {
+
+    private static final int DEFAULT_GAMES = 10_000;
+    private static final String DEFAULT_DIRECTORY = "heatmaps";
+    private static final long MAX_FRAMES_PER_GAME = 60L * 60 * 10;
+    private static final int HOT_TILES = 5;
+
+    private DeathHeatmap() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        Path directory = Paths.get(args.length > 1 ? args[1] : DEFAULT_DIRECTORY);
+        Files.createDirectories(directory);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        FrameRenderer renderer = new FrameRenderer();
+        try {
+            for (LevelData levelData : LevelData.loadAll()) {
+                long start = System.nanoTime();
+                List<Future<Counts>> futures = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    int first = games * i / threads;
+                    int last = games * (i + 1) / threads;
+                    futures.add(workers.submit(() -> play(levelData, first, last)));
+                }
+                Counts total = new Counts(levelData.getMaze());
+                for (Future<Counts> future : futures) {
+                    total.add(future.get());
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                String name = levelData.getName().replace(".tmx", "");
+                writeHeatmap(renderer, levelData, total.deaths, new Color(255, 40, 40),
+                        directory.resolve(name + "-deaths.png"));
+                writeHeatmap(renderer, levelData, total.pills, new Color(40, 255, 40),
+                        directory.resolve(name + "-pills.png"));
+                System.out.printf("%s: %d games, %d deaths and %d pills in %.1f s (%.0f deaths per second)%n",
+                        levelData.getName(), games, total.deathCount, total.pillCount, seconds,
+                        total.deathCount / seconds);
+                printHotTiles(levelData.getMaze(), total.deaths);
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private static Counts play(LevelData levelData, int firstSeed, int lastSeed) {
+        Game game = new Game(List.of(levelData));
+        Maze maze = levelData.getMaze();
+        Counts counts = new Counts(maze);
+        game.setListener(new Game.Listener() {
+            @Override
+            public void playerDied(double x, double y) {
+                counts.deaths[maze.tileOf(x, y)]++;
+                counts.deathCount++;
+            }
+
+            @Override
+            public void pillEaten(double x, double y) {
+                counts.pills[maze.tileOf(x, y)]++;
+                counts.pillCount++;
+            }
+        });
+        for (int seed = firstSeed; seed < lastSeed; seed++) {
+            Random input = new Random(seed);
+            game.reset(seed);
+            int action = Game.NONE;
+            while (!game.isOver() && game.getFrame() < MAX_FRAMES_PER_GAME) {
+                if (input.nextInt(30) == 0) {
+                    action = input.nextInt(5);
+                }
+                game.step(action);
+            }
+        }
+        return counts;
+    }
+
+    // The color is stronger the more events a tile has, on a square root scale so that rare spots still show
+    private static void writeHeatmap(FrameRenderer renderer, LevelData levelData, long[] counts, Color color, Path file)
+            throws IOException {
+        BufferedImage image = FrameRenderer.createImage(levelData);
+        Graphics2D graphics = image.createGraphics();
+        graphics.drawImage(renderer.background(levelData), 0, 0, null);
+        graphics.setColor(new Color(0, 0, 0, 160));
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+        long max = 0;
+        for (long count : counts) {
+            max = Math.max(max, count);
+        }
+        Maze maze = levelData.getMaze();
+        for (int tile = 0; tile < counts.length && max > 0; tile++) {
+            if (counts[tile] > 0) {
+                int alpha = (int) (20 + 235 * Math.sqrt((double) counts[tile] / max));
+                graphics.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha));
+                graphics.fillRect((int) maze.x(tile), (int) maze.y(tile), maze.getTileWidth(), maze.getTileHeight());
+            }
+        }
+        graphics.dispose();
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+    private static void printHotTiles(Maze maze, long[] deaths) {
+        long total = 0;
+        for (long count : deaths) {
+            total += count;
+        }
+        long[] remaining = deaths.clone();
+        for (int i = 0; i < HOT_TILES && total > 0; i++) {
+            int hottest = 0;
+            for (int tile = 1; tile < remaining.length; tile++) {
+                if (remaining[tile] > remaining[hottest]) {
+                    hottest = tile;
+                }
+            }
+            if (remaining[hottest] == 0) {
+                break;
+            }
+            System.out.printf("  column %2d, row %2d: %5.1f%% of deaths%n",
+                    maze.column(hottest), maze.row(hottest), 100.0 * remaining[hottest] / total);
+            remaining[hottest] = 0;
+        }
+    }
+
+    private static final class Counts {
+
+        private final long[] deaths;
+        private final long[] pills;
+        private long deathCount;
+        private long pillCount;
+
+        private Counts(Maze maze) {
+            deaths = new long[maze.getColumns() * maze.getRows()];
+            pills = new long[maze.getColumns() * maze.getRows()];
+        }
+
+        private void add(Counts other) {
+            for (int i = 0; i < deaths.length; i++) {
+                deaths[i] += other.deaths[i];
+                pills[i] += other.pills[i];
+            }
+            deathCount += other.deathCount;
+            pillCount += other.pillCount;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Plays a headless game with random input and writes every frame as a PNG image, without opening a window.
+ * Frames are rendered one at a time on the main thread, and encoded on a pool with one thread per core.
+ * Only a few frames per thread are in flight at any time, and their images are reused, so memory use does not
+ * depend on the length of the game. The frames can be made into a video with for example
+ * {@code ffmpeg -framerate 60 -i frame-%06d.png game.mp4}.
+ * <p>
+ * Usage: FrameExporter [output directory] [seed] [max frames]
+ */
+public final class FrameExporter {
+
+    private static final String DEFAULT_DIRECTORY = "frames";
+    private static final long DEFAULT_MAX_FRAMES = 60L * 60 * 5;
+    private static final int FRAMES_IN_FLIGHT_PER_THREAD = 2;
+
+    private FrameExporter() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : DEFAULT_DIRECTORY);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        long maxFrames = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MAX_FRAMES;
+        Files.createDirectories(directory);
+
+        List<LevelData> levels = LevelData.loadAll();
+        Game game = new Game(levels);
+        FrameRenderer renderer = new FrameRenderer();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService encoders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "frame-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Rendering waits for a permit when all frames in flight are still being encoded
+        Semaphore inFlight = new Semaphore(threads * FRAMES_IN_FLIGHT_PER_THREAD);
+        Queue<BufferedImage> free = new ConcurrentLinkedQueue<>();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+
+        long start = System.nanoTime();
+        Random input = new Random(seed);
+        game.reset(seed);
+        int action = Game.NONE;
+        int frames = 0;
+        while (!game.isOver() && game.getFrame() < maxFrames && failure.get() == null) {
+            inFlight.acquire();
+            BufferedImage image = free.poll();
+            if (image == null || !fits(image, game.getLevelData())) {
+                image = FrameRenderer.createImage(game.getLevelData());
+            }
+            renderer.render(game, image);
+
+            Path file = directory.resolve(String.format("frame-%06d.png", frames++));
+            BufferedImage frame = image;
+            encoders.execute(() -> {
+                try {
+                    ImageIO.write(frame, "png", file.toFile());
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    free.add(frame);
+                    inFlight.release();
+                }
+            });
+
+            if (input.nextInt(30) == 0) {
+                action = input.nextInt(5);
+            }
+            game.step(action);
+        }
+        encoders.shutdown();
+        encoders.awaitTermination(1, TimeUnit.HOURS);
+        if (failure.get() != null) {
+            throw new UncheckedIOException("Failed to write frame", failure.get());
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Wrote %d frames to %s in %.1f s, %.1f frames per second (%.1fx real time) on %d threads%n",
+                frames, directory, seconds, frames / seconds, frames * Game.TPF / seconds, threads);
+        System.out.println(game);
+    }
+
+    // Levels may differ in size, so an image from the last level may not fit the next
+    private static boolean fits(BufferedImage image, LevelData levelData) {
+        return image.getWidth() == levelData.getColumns() * levelData.getTileWidth()
+                && image.getHeight() == levelData.getRows() * levelData.getTileHeight();
+    }
+}
@@ -0,0 +1,198 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Direction;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GhostMotion;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+import se.mejsla.vassare.fxgl.mazelaman.sim.Tileset;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Draws a headless {@link Game} the way the app shows it, into an off-screen image, without JavaFX or a window.
+ * Sprites are read from the same atlas as the app uses, and the tile layers of each level are drawn once
+ * into a background image that is reused for every frame.
+ */
+public final class FrameRenderer {
+
+    private static final String ASSETS_DIR = "/assets/";
+    private static final double PLAYER_ANIMATION_SECONDS = 0.5;
+    private static final int PLAYER_FRAMES = 6;
+    private static final Composite FRIGHTENED = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f);
+
+    private final BufferedImage atlas;
+    private final Map<String, Rectangle> regions;
+    private final Map<LevelData, BufferedImage> backgrounds = new IdentityHashMap<>();
+    private final Map<String, BufferedImage> tilesets = new HashMap<>();
+
+    public FrameRenderer() {
+        atlas = readImage("textures/atlas.png");
+        regions = readRegions("textures/atlas.txt");
+    }
+
+    /**
+     * Returns an image of the right size to render frames of {@code levelData} into.
+     */
+    public static BufferedImage createImage(LevelData levelData) {
+        return new BufferedImage(levelData.getColumns() * levelData.getTileWidth(),
+                levelData.getRows() * levelData.getTileHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Draws the current frame of {@code game} into {@code image}.
+     */
+    public void render(Game game, BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.drawImage(background(game.getLevelData()), 0, 0, null);
+            for (int i = 0; i < game.getPillCount(); i++) {
+                if (!game.isPillEaten(i)) {
+                    int x = (int) game.getPillX(i);
+                    int y = (int) game.getPillY(i);
+                    // Power pills look like pills, only twice as big around the same center
+                    int grow = game.isPowerPill(i) ? 10 : 0;
+                    drawSprite(graphics, "pill.png", x - grow, y - grow, 20 + 2 * grow, 20 + 2 * grow);
+                }
+            }
+            for (int i = 0; i < game.getCherrySpawnCount(); i++) {
+                if (game.hasCherry(i)) {
+                    drawSprite(graphics, "cherry.png", (int) game.getCherryX(i), (int) game.getCherryY(i), 20, 20);
+                }
+            }
+            for (int i = 0; i < game.getGhostCount(); i++) {
+                drawGhost(graphics, game.getGhost(i), game.isGhostFrightened(i));
+            }
+            drawPlayer(graphics, game);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Returns the tile layers of {@code levelData} drawn on black, which is everything that does not move.
+     */
+    public BufferedImage background(LevelData levelData) {
+        return backgrounds.computeIfAbsent(levelData, this::drawBackground);
+    }
+
+    private BufferedImage drawBackground(LevelData levelData) {
+        BufferedImage image = createImage(levelData);
+        Tileset tileset = levelData.getTileset();
+        BufferedImage tiles = tilesets.computeIfAbsent(tileset.getImage(), name -> readImage("levels/" + name));
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        for (int[] layer : levelData.getTileLayers()) {
+            for (int i = 0; i < layer.length; i++) {
+                int gid = layer[i];
+                if (gid >= tileset.getFirstGid()) {
+                    int x = (i % levelData.getColumns()) * levelData.getTileWidth();
+                    int y = (i / levelData.getColumns()) * levelData.getTileHeight();
+                    int sx = tileset.tileX(gid);
+                    int sy = tileset.tileY(gid);
+                    graphics.drawImage(tiles, x, y, x + tileset.getTileWidth(), y + tileset.getTileHeight(),
+                            sx, sy, sx + tileset.getTileWidth(), sy + tileset.getTileHeight(), null);
+                }
+            }
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private void drawGhost(Graphics2D graphics, GhostMotion ghost, boolean frightened) {
+        String sprite = ghost.getName() + "-up-down.png";
+        if (ghost.getDirection() == Direction.LEFT) {
+            sprite = ghost.getName() + "-left.png";
+        } else if (ghost.getDirection() == Direction.RIGHT) {
+            sprite = ghost.getName() + "-right.png";
+        }
+        Composite composite = graphics.getComposite();
+        if (frightened) {
+            graphics.setComposite(FRIGHTENED);
+        }
+        drawSprite(graphics, sprite, (int) ghost.getX(), (int) ghost.getY(), 20, 20);
+        graphics.setComposite(composite);
+    }
+
+    private void drawPlayer(Graphics2D graphics, Game game) {
+        String sprite = "player-up-down.png";
+        if (game.getPlayerFacing() == Direction.LEFT) {
+            sprite = "player-left.png";
+        } else if (game.getPlayerFacing() == Direction.RIGHT) {
+            sprite = "player-right.png";
+        }
+        // The player sprites are strips of animation frames, which loop in the same time as in the app
+        Rectangle strip = region(sprite);
+        int frameWidth = strip.width / PLAYER_FRAMES;
+        double seconds = game.getFrame() * Game.TPF;
+        int frame = (int) (seconds % PLAYER_ANIMATION_SECONDS / PLAYER_ANIMATION_SECONDS * PLAYER_FRAMES);
+        int sx = strip.x + frame * frameWidth;
+        int x = (int) game.getPlayerX();
+        int y = (int) game.getPlayerY();
+        graphics.drawImage(atlas, x, y, x + frameWidth, y + strip.height,
+                sx, strip.y, sx + frameWidth, strip.y + strip.height, null);
+    }
+
+    private void drawSprite(Graphics2D graphics, String name, int x, int y, int width, int height) {
+        Rectangle region = region(name);
+        graphics.drawImage(atlas, x, y, x + width, y + height,
+                region.x, region.y, region.x + region.width, region.y + region.height, null);
+    }
+
+    private Rectangle region(String name) {
+        Rectangle region = regions.get(name);
+        if (region == null) {
+            throw new IllegalArgumentException("Sprite not in atlas: " + name);
+        }
+        return region;
+    }
+
+    private static BufferedImage readImage(String entry) {
+        try (InputStream in = FrameRenderer.class.getResourceAsStream(ASSETS_DIR + entry)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Image not found: " + entry);
+            }
+            return ImageIO.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read image: " + entry, e);
+        }
+    }
+
+    private static Map<String, Rectangle> readRegions(String entry) {
+        Map<String, Rectangle> regions = new HashMap<>();
+        try (InputStream in = FrameRenderer.class.getResourceAsStream(ASSETS_DIR + entry)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Atlas index not found: " + entry);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                regions.put(fields[0], new Rectangle(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                        Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read atlas index: " + entry, e);
+        }
+        return regions;
+    }
+}
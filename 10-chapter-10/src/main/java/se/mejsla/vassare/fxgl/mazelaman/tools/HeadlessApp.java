@@ -0,0 +1,50 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import com.almasb.fxgl.dsl.FXGL;
+import se.mejsla.vassare.fxgl.mazelaman.MazelaManApp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the app for tools that drive it from the FX thread. The app runs without a display, using Monocle and
+ * software rendering, unless -Dtools.headless=false is given. Frames are not throttled to 60 fps, and the high scores
+ * and saved game are kept in a temporary home directory, so the tools leave the real ones alone.
+ */
+final class HeadlessApp {
+
+    private HeadlessApp() {
+    }
+
+    /**
+     * Launches the app with {@code args}, and returns when the engine has started.
+     */
+    static void launch(String... args) throws IOException, InterruptedException {
+        if (Boolean.parseBoolean(System.getProperty("tools.headless", "true"))) {
+            System.setProperty("glass.platform", "Monocle");
+            System.setProperty("monocle.platform", "Headless");
+            System.setProperty("prism.order", "sw");
+        }
+        // Let frames run as fast as they can, instead of waiting for the next 60 Hz pulse
+        System.setProperty("javafx.animation.fullspeed", "true");
+        System.setProperty("prism.vsync", "false");
+        System.setProperty("user.home", Files.createTempDirectory("mazela-man-tools").toString());
+
+        Thread app = new Thread(() -> MazelaManApp.main(args), "app");
+        app.setDaemon(true);
+        app.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            try {
+                FXGL.getGameWorld();
+                return;
+            } catch (RuntimeException e) {
+                // The engine has not been initialized yet
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("The game did not start");
+    }
+}
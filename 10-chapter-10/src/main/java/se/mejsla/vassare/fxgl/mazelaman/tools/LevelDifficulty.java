@@ -0,0 +1,231 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GreedyBot;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Estimates how hard each level is by letting {@link GreedyBot} play many seeded games of it, split over one worker
+ * per core. Each level is played on its own. The levels are ranked from easiest to hardest by clear rate,
+ * then by lives lost, then by time to clear.
+ * <p>
+ * Results are cached in ~/.mazela-man/difficulty.txt under a hash of the level file, so only new or changed levels
+ * are played again. Bump {@link #CACHE_VERSION} when the game rules or the bot change.
+ * <p>
+ * Usage: LevelDifficulty [playouts per level]
+ */
+public final class LevelDifficulty {
+
+    private static final int CACHE_VERSION = 1;
+    private static final int DEFAULT_PLAYOUTS = 2000;
+    private static final double MISTAKE_RATE = 0.2;
+    private static final long MAX_FRAMES_PER_GAME = 60L * 60 * 10;
+
+    private LevelDifficulty() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int playouts = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PLAYOUTS;
+        Path cacheFile = Paths.get(System.getProperty("user.home"), ".mazela-man", "difficulty.txt");
+        Map<String, Result> cache = readCache(cacheFile);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Result> results = new ArrayList<>();
+        try {
+            for (LevelData levelData : LevelData.loadAll()) {
+                String key = hash(levelData.getName()) + "-" + playouts + "-" + CACHE_VERSION;
+                Result result = cache.get(key);
+                if (result != null) {
+                    System.out.println(levelData.getName() + ": unchanged, using cached result");
+                } else {
+                    long start = System.nanoTime();
+                    result = evaluate(workers, threads, levelData, playouts);
+                    cache.put(key, result);
+                    System.out.printf("%s: %d playouts in %.1f s%n",
+                            levelData.getName(), playouts, (System.nanoTime() - start) / 1e9);
+                }
+                results.add(result);
+            }
+        } finally {
+            workers.shutdown();
+        }
+        writeCache(cacheFile, cache);
+
+        results.sort(Comparator.comparingDouble((Result result) -> -result.clearRate)
+                .thenComparingDouble(result -> result.meanLivesLost)
+                .thenComparingDouble(result -> result.meanClearSeconds));
+        System.out.println();
+        System.out.println("Rank  Level         Cleared  Time to clear  Lives lost   Score: mean    p10    p50    p90");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            System.out.printf("%4d  %-12s  %6.1f%%  %11.1f s  %10.2f  %13.0f  %5d  %5d  %5d%n",
+                    i + 1, result.name, result.clearRate * 100.0, result.meanClearSeconds, result.meanLivesLost,
+                    result.meanScore, result.scoreP10, result.scoreP50, result.scoreP90);
+        }
+    }
+
+    private static Result evaluate(ExecutorService workers, int threads, LevelData levelData, int playouts)
+            throws InterruptedException, ExecutionException {
+        List<Future<Playouts>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int first = playouts * i / threads;
+            int last = playouts * (i + 1) / threads;
+            futures.add(workers.submit(() -> play(levelData, first, last)));
+        }
+
+        int cleared = 0;
+        long clearFrames = 0;
+        long livesLost = 0;
+        int[] scores = new int[playouts];
+        int count = 0;
+        for (Future<Playouts> future : futures) {
+            Playouts part = future.get();
+            cleared += part.cleared;
+            clearFrames += part.clearFrames;
+            livesLost += part.livesLost;
+            System.arraycopy(part.scores, 0, scores, count, part.scores.length);
+            count += part.scores.length;
+        }
+        Arrays.sort(scores);
+        return new Result(levelData.getName(),
+                (double) cleared / playouts,
+                cleared > 0 ? clearFrames * Game.TPF / cleared : 0.0,
+                (double) livesLost / playouts,
+                Arrays.stream(scores).average().orElse(0.0),
+                percentile(scores, 10), percentile(scores, 50), percentile(scores, 90));
+    }
+
+    private static Playouts play(LevelData levelData, int firstSeed, int lastSeed) {
+        Game game = new Game(List.of(levelData));
+        Playouts playouts = new Playouts(lastSeed - firstSeed);
+        for (int seed = firstSeed; seed < lastSeed; seed++) {
+            GreedyBot bot = new GreedyBot(new Random(seed), MISTAKE_RATE);
+            game.reset(seed);
+            int startLives = game.getLives();
+            while (!game.isOver() && game.getFrame() < MAX_FRAMES_PER_GAME) {
+                game.step(bot.act(game));
+            }
+            // With only one level, the end of the game means that the level was cleared
+            if (game.isEndOfGame()) {
+                playouts.cleared++;
+                playouts.clearFrames += game.getFrame();
+            }
+            playouts.livesLost += startLives - game.getLives();
+            playouts.scores[seed - firstSeed] = game.getScore();
+        }
+        return playouts;
+    }
+
+    private static int percentile(int[] sorted, int percent) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    private static String hash(String levelName) {
+        try (InputStream in = LevelDifficulty.class.getResourceAsStream("/assets/levels/" + levelName)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Level not found: " + levelName);
+            }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(in.readAllBytes());
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read level: " + levelName, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // One line per result: key, name, clear rate, time to clear, lives lost, mean score and score percentiles
+    private static Map<String, Result> readCache(Path file) throws IOException {
+        Map<String, Result> cache = new HashMap<>();
+        if (!Files.exists(file)) {
+            return cache;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(" ");
+            if (fields.length != 9) {
+                continue;
+            }
+            cache.put(fields[0], new Result(fields[1], Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+                    Double.parseDouble(fields[4]), Double.parseDouble(fields[5]),
+                    Integer.parseInt(fields[6]), Integer.parseInt(fields[7]), Integer.parseInt(fields[8])));
+        }
+        return cache;
+    }
+
+    private static void writeCache(Path file, Map<String, Result> cache) throws IOException {
+        Files.createDirectories(file.getParent());
+        List<String> lines = cache.entrySet().stream()
+                .map(entry -> entry.getKey() + " " + entry.getValue().toLine())
+                .sorted()
+                .collect(Collectors.toList());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static final class Playouts {
+
+        private final int[] scores;
+        private int cleared;
+        private long clearFrames;
+        private long livesLost;
+
+        private Playouts(int count) {
+            scores = new int[count];
+        }
+    }
+
+    private static final class Result {
+
+        private final String name;
+        private final double clearRate;
+        private final double meanClearSeconds;
+        private final double meanLivesLost;
+        private final double meanScore;
+        private final int scoreP10;
+        private final int scoreP50;
+        private final int scoreP90;
+
+        private Result(String name, double clearRate, double meanClearSeconds, double meanLivesLost,
+                       double meanScore, int scoreP10, int scoreP50, int scoreP90) {
+            this.name = name;
+            this.clearRate = clearRate;
+            this.meanClearSeconds = meanClearSeconds;
+            this.meanLivesLost = meanLivesLost;
+            this.meanScore = meanScore;
+            this.scoreP10 = scoreP10;
+            this.scoreP50 = scoreP50;
+            this.scoreP90 = scoreP90;
+        }
+
+        private String toLine() {
+            return name + " " + clearRate + " " + meanClearSeconds + " " + meanLivesLost + " " + meanScore
+                    + " " + scoreP10 + " " + scoreP50 + " " + scoreP90;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.Entity;
+import com.almasb.fxgl.entity.GameWorld;
+import com.almasb.fxgl.entity.components.IrremovableComponent;
+import com.almasb.fxgl.entity.level.Level;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import se.mejsla.vassare.fxgl.mazelaman.Assets;
+import se.mejsla.vassare.fxgl.mazelaman.EntityType;
+import se.mejsla.vassare.fxgl.mazelaman.LevelTransition;
+import se.mejsla.vassare.fxgl.mazelaman.MazelaLevelLoader;
+import se.mejsla.vassare.fxgl.mazelaman.MazelaManApp;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times switching the running app from level 1 to level 2, with a full rebuild like {@link LevelTransition} does,
+ * and with the walls that both levels have in common kept. Both ways build all entities of the new level first, as
+ * the background loading does, and the time to switch is that plus the time to remove and add entities.
+ * The app is switched back to level 1 between the timed switches, without timing that.
+ * <p>
+ * Usage: LevelSwitchBenchmark [rounds]
+ */
+public final class LevelSwitchBenchmark {
+
+    private static final int DEFAULT_ROUNDS = 200;
+    private static final int WARMUP_ROUNDS = 50;
+
+    private final int rounds;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private MazelaManApp app;
+    private int kept;
+
+    private LevelSwitchBenchmark(int rounds) {
+        this.rounds = rounds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+        HeadlessApp.launch();
+        LevelSwitchBenchmark benchmark = new LevelSwitchBenchmark(rounds);
+        Platform.runLater(benchmark::start);
+        if (!benchmark.done.await(10, TimeUnit.MINUTES)) {
+            System.err.println("Timed out");
+            System.exit(3);
+        }
+        System.exit(0);
+    }
+
+    private void start() {
+        app = FXGL.getAppCast();
+        double timerAtStart = FXGL.getGameTimer().getNow();
+        FXGL.getGameController().startNewGame();
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                // The game timer only runs once the game is being played, which it is while the level loads
+                if (FXGL.getGameTimer().getNow() != timerAtStart && !app.isLoading()) {
+                    stop();
+                    run();
+                    done.countDown();
+                }
+            }
+        }.start();
+    }
+
+    // Runs on the FX thread between two frames, so the game does not step while the levels are switched
+    private void run() {
+        MazelaLevelLoader loader = new MazelaLevelLoader(app.getSpawnTemplates());
+        LevelData level1 = Assets.level(LevelData.fileName(1));
+        LevelData level2 = Assets.level(LevelData.fileName(2));
+        long[][] rebuild = new long[2][rounds];
+        long[][] keepWalls = new long[2][rounds];
+        for (int round = -WARMUP_ROUNDS; round < rounds; round++) {
+            switchLevel(loader, level2, false, rebuild, round);
+            switchLevel(loader, level1, false, null, round);
+            switchLevel(loader, level2, true, keepWalls, round);
+            switchLevel(loader, level1, false, null, round);
+        }
+
+        System.out.printf("level1 -> level2, %d rounds, %d of the walls kept%n", rounds, kept);
+        System.out.printf("%-12s %12s %12s %12s %12s%n", "", "Build ms", "Switch ms", "Total ms", "Median ms");
+        double rebuildTotal = print("Rebuild", rebuild);
+        double keepWallsTotal = print("Keep walls", keepWalls);
+        System.out.printf("Keeping the walls is %.1f%% faster than a full rebuild%n",
+                (rebuildTotal - keepWallsTotal) / rebuildTotal * 100.0);
+    }
+
+    // Records the nanoseconds spent building the entities and switching to them in round, unless it is a warmup
+    private void switchLevel(MazelaLevelLoader loader, LevelData data, boolean keepWalls, long[][] times, int round) {
+        long start = System.nanoTime();
+        Level level = loader.load(data, () -> { });
+        long built = System.nanoTime();
+        if (keepWalls) {
+            switchKeepingWalls(level);
+        } else {
+            new LevelTransition(level).step(Long.MAX_VALUE);
+        }
+        long switched = System.nanoTime();
+        if (times != null && round >= 0) {
+            times[0][round] = built - start;
+            times[1][round] = switched - built;
+        }
+    }
+
+    // The transition as it was when the walls that both levels have in common were kept
+    private void switchKeepingWalls(Level level) {
+        GameWorld world = FXGL.getGameWorld();
+        Map<Rectangle2D, Entity> oldWalls = new HashMap<>();
+        world.getEntitiesByType(EntityType.WALL).forEach(wall -> oldWalls.put(boundsOf(wall), wall));
+
+        Set<Entity> keep = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Entity> added = new ArrayList<>();
+        for (Entity entity : level.getEntities()) {
+            Entity oldWall = entity.isType(EntityType.WALL) ? oldWalls.remove(boundsOf(entity)) : null;
+            if (oldWall != null) {
+                keep.add(oldWall);
+            } else {
+                added.add(entity);
+            }
+        }
+        kept = keep.size();
+        for (Entity entity : world.getEntitiesCopy()) {
+            if (!keep.contains(entity) && !entity.hasComponent(IrremovableComponent.class)) {
+                entity.removeFromWorld();
+            }
+        }
+        added.forEach(world::addEntity);
+    }
+
+    private static Rectangle2D boundsOf(Entity entity) {
+        return new Rectangle2D(entity.getX(), entity.getY(), entity.getWidth(), entity.getHeight());
+    }
+
+    // Prints the mean times and the median total, and returns the mean total in milliseconds
+    private double print(String name, long[][] times) {
+        long[] totals = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            totals[i] = times[0][i] + times[1][i];
+        }
+        Arrays.sort(totals);
+        double build = Arrays.stream(times[0]).average().orElse(0.0) / 1_000_000.0;
+        double switched = Arrays.stream(times[1]).average().orElse(0.0) / 1_000_000.0;
+        System.out.printf("%-12s %12.3f %12.3f %12.3f %12.3f%n",
+                name, build, switched, build + switched, totals[rounds / 2] / 1_000_000.0);
+        return build + switched;
+    }
+}
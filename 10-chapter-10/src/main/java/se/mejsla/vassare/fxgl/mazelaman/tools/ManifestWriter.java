@@ -0,0 +1,78 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes the manifest of assets to preload, which lists every file in the assets directory except the manifest
+ * itself. Sprites that are packed into the atlas are left out, as preloading the atlas covers them, unless they are
+ * named on the command line because they are copied out of the atlas into images of their own.
+ * Run with {@code mvn -Pmanifest process-classes}, or directly:
+ * <pre>
+ * ManifestWriter src/main/resources/assets player-left.png player-right.png player-up-down.png
+ * </pre>
+ */
+public final class ManifestWriter {
+
+    public static final String MANIFEST = "manifest.txt";
+
+    private ManifestWriter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ManifestWriter <assets directory> [sprites copied out of the atlas...]");
+            System.exit(1);
+        }
+        write(Paths.get(args[0]), Set.copyOf(Arrays.asList(args).subList(1, args.length)));
+    }
+
+    public static void write(Path directory, Set<String> copiedSprites) throws IOException {
+        Set<String> packedSprites = readAtlasIndex(directory.resolve("textures").resolve(AtlasPacker.ATLAS_INDEX));
+        List<String> entries;
+        try (Stream<Path> files = Files.walk(directory)) {
+            entries = files.filter(Files::isRegularFile)
+                    .map(file -> directory.relativize(file).toString().replace('\\', '/'))
+                    .filter(entry -> !entry.equals(MANIFEST))
+                    .filter(entry -> !isPackedSprite(entry, packedSprites, copiedSprites))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        Path manifest = directory.resolve(MANIFEST);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(manifest, StandardCharsets.UTF_8))) {
+            writer.println("# Assets preloaded while the main menu is shown, relative to the assets directory");
+            entries.forEach(writer::println);
+        }
+        System.out.println("Listed " + entries.size() + " assets in " + manifest);
+    }
+
+    private static boolean isPackedSprite(String entry, Set<String> packedSprites, Set<String> copiedSprites) {
+        if (!entry.startsWith("textures/")) {
+            return false;
+        }
+        String name = entry.substring("textures/".length());
+        return packedSprites.contains(name) && !copiedSprites.contains(name);
+    }
+
+    private static Set<String> readAtlasIndex(Path index) throws IOException {
+        if (!Files.exists(index)) {
+            return Set.of();
+        }
+        try (Stream<String> lines = Files.lines(index, StandardCharsets.UTF_8)) {
+            return lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(line -> line.split("\\s+")[0])
+                    .collect(Collectors.toSet());
+        }
+    }
+}
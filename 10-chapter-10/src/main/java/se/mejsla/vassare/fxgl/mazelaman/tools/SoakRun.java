@@ -0,0 +1,260 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.entity.GameWorld;
+import com.almasb.fxgl.input.InputModifier;
+import com.almasb.fxgl.time.Timer;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.input.KeyCode;
+import se.mejsla.vassare.fxgl.mazelaman.DespawnComponent;
+import se.mejsla.vassare.fxgl.mazelaman.MazelaManApp;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GameClock;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays many games of the app back to back, and checks that nothing is left behind between games. Each game is
+ * started from the main menu like a player would, so the app tears down the previous game itself. Every tenth game is
+ * ended while its level is loading, so that the load is cancelled. The other games are played for a number of frames
+ * at the highest time scale, with random input and more lives than they can lose.
+ * <p>
+ * When the first level of a game has been loaded, the numbers of entities, tickers, collision grid entries, despawn
+ * countdowns and actions scheduled on the game timer must be the same as in the first game, and the heap must not
+ * keep growing.
+ * <p>
+ * The app is started by {@link HeadlessApp}, so it runs without a display unless -Dtools.headless=false is given.
+ * <p>
+ * Usage: SoakRun [games] [frames per game], or mvn -Psoak process-classes
+ */
+public final class SoakRun {
+
+    private static final int DEFAULT_GAMES = 10_000;
+    private static final int DEFAULT_FRAMES_PER_GAME = 60;
+    private static final int CHECKPOINTS = 10;
+    private static final int CANCEL_EVERY = 10;
+    private static final int LIVES = 1_000;
+    private static final long MAX_HEAP_GROWTH = 16L * 1024 * 1024;
+    private static final String[] COUNTS = {
+            "entities", "tickers", "grid entries", "despawn countdowns", "timer actions"
+    };
+    private static final KeyCode[] KEYS = {KeyCode.A, KeyCode.D, KeyCode.W, KeyCode.S};
+
+    private final int games;
+    private final int framesPerGame;
+    private final Random random = new Random(0);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final long[] maxCounts = new long[COUNTS.length];
+
+    private MazelaManApp app;
+    private Field timerActionsField;
+    private Method sizeMethod;
+    private volatile int game;
+    private volatile String failure;
+    private boolean starting;
+    private double timerAtStart;
+    private int frame;
+    private int cancelled;
+    private long[] firstCounts;
+    private long baselineHeap = -1;
+    private KeyCode pressed;
+
+    private SoakRun(int games, int framesPerGame) {
+        this.games = games;
+        this.framesPerGame = framesPerGame;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int framesPerGame = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FRAMES_PER_GAME;
+        HeadlessApp.launch();
+
+        SoakRun soak = new SoakRun(games, framesPerGame);
+        long startNanos = System.nanoTime();
+        Platform.runLater(soak::start);
+        int lastGame = 0;
+        while (!soak.done.await(1, TimeUnit.MINUTES)) {
+            if (soak.game == lastGame) {
+                System.err.println("Game " + lastGame + " has not ended in a minute");
+                System.exit(3);
+            }
+            lastGame = soak.game;
+        }
+        if (soak.failure != null) {
+            System.err.println(soak.failure);
+            System.exit(1);
+        }
+        System.out.printf("Played %d games (%d cancelled while loading) in %.1f s, nothing left behind%n",
+                games, soak.cancelled, (System.nanoTime() - startNanos) / 1_000_000_000.0);
+        System.exit(0);
+    }
+
+    private void start() {
+        app = FXGL.getAppCast();
+        try {
+            timerActionsField = Timer.class.getDeclaredField("timerActions");
+            timerActionsField.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            failure = "Cannot count the actions of the game timer: " + e;
+            done.countDown();
+            return;
+        }
+        game = 1;
+        startGame();
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (!update()) {
+                    stop();
+                    done.countDown();
+                }
+            }
+        }.start();
+    }
+
+    private void startGame() {
+        release();
+        starting = true;
+        timerAtStart = FXGL.getGameTimer().getNow();
+        // Back to the main menu, like the game over dialog does, and then a new game
+        if (game > 1) {
+            FXGL.getGameController().gotoMainMenu();
+        }
+        FXGL.getGameController().startNewGame();
+    }
+
+    // Called once per pulse on the FX thread, after the app has been updated, returns false when the soak is over
+    private boolean update() {
+        if (starting) {
+            // The game timer only runs once the new game is being played, which it is while its level loads
+            if (FXGL.getGameTimer().getNow() == timerAtStart) {
+                return true;
+            }
+            if (game % CANCEL_EVERY == CANCEL_EVERY / 2 && app.isLoading()) {
+                cancelled++;
+                return nextGame();
+            }
+            if (app.isLoading()) {
+                return true;
+            }
+            starting = false;
+            frame = 0;
+            return levelStarted();
+        }
+
+        if (frame % 2 == 0) {
+            press(KEYS[random.nextInt(KEYS.length)]);
+        }
+        long[] counts = counts();
+        for (int i = 0; i < counts.length; i++) {
+            maxCounts[i] = Math.max(maxCounts[i], counts[i]);
+        }
+        // A game is not ended during a level change, so that only the games meant to do it cancel a load
+        if (++frame >= framesPerGame && !app.isLoading()) {
+            return nextGame();
+        }
+        return true;
+    }
+
+    private boolean nextGame() {
+        if (game == games) {
+            release();
+            return false;
+        }
+        game++;
+        startGame();
+        return true;
+    }
+
+    private boolean levelStarted() {
+        long[] counts = counts();
+        if (firstCounts == null) {
+            firstCounts = counts;
+        } else if (!Arrays.equals(firstCounts, counts)) {
+            failure = "Game " + game + " started with " + describe(counts) + ", the first game with "
+                    + describe(firstCounts);
+            return false;
+        }
+        FXGL.set("lives", LIVES);
+        app.getClock().setScale(GameClock.MAX_SCALE);
+
+        if (game % Math.max(1, games / CHECKPOINTS) == 0) {
+            long heap = usedHeap();
+            if (baselineHeap < 0) {
+                baselineHeap = heap;
+            }
+            System.out.printf("%6d games, heap %6.2f MB (%+.2f MB), most live %s%n",
+                    game, heap / 1048576.0, (heap - baselineHeap) / 1048576.0, describe(maxCounts));
+            if (heap - baselineHeap > MAX_HEAP_GROWTH) {
+                failure = "Heap grew by " + (heap - baselineHeap) + " bytes";
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long[] counts() {
+        GameWorld world = FXGL.getGameWorld();
+        return new long[] {
+                world.getEntities().size(),
+                app.getTicks().getTickerCount(),
+                app.getCollisionGrid().size(),
+                world.getEntitiesByComponent(DespawnComponent.class).size(),
+                timerActions()
+        };
+    }
+
+    // The timer does not tell how many actions it has scheduled, so the count is read from its list of actions
+    private long timerActions() {
+        try {
+            Object actions = timerActionsField.get(FXGL.getGameTimer());
+            if (sizeMethod == null) {
+                Class<?> type = actions.getClass();
+                sizeMethod = Arrays.stream(type.getMethods())
+                        .filter(m -> m.getParameterCount() == 0)
+                        .filter(m -> m.getName().equals("size") || m.getName().equals("getSize"))
+                        .findFirst()
+                        .orElseThrow(() -> new NoSuchMethodException(type.getName() + ".size()"));
+            }
+            return ((Number) sizeMethod.invoke(actions)).longValue();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot count the actions of the game timer", e);
+        }
+    }
+
+    private static String describe(long[] counts) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(counts[i]).append(" ").append(COUNTS[i]);
+        }
+        return builder.toString();
+    }
+
+    private void press(KeyCode key) {
+        if (key != pressed) {
+            release();
+            FXGL.getInput().mockKeyPress(key, InputModifier.NONE);
+            pressed = key;
+        }
+    }
+
+    private void release() {
+        if (pressed != null) {
+            FXGL.getInput().mockKeyRelease(pressed, InputModifier.NONE);
+            pressed = null;
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,118 @@
+package se.mejsla.vassare.fxgl.mazelaman.tools;
+
+import se.mejsla.vassare.fxgl.mazelaman.sim.Game;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GameClock;
+import se.mejsla.vassare.fxgl.mazelaman.sim.GreedyBot;
+import se.mejsla.vassare.fxgl.mazelaman.sim.LevelData;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Checks that the game plays the same at any time scale and frame rate. Each headless game is first played one step
+ * at a time for {@link #GAME_SECONDS} seconds of game time. It is then played again at each time scale, by feeding
+ * real frame times of different patterns through {@link GameClock#advance} until the same game time has passed.
+ * Every run must take the same number of steps and end in the same state as the first one. A bot picks the input in
+ * each step from the state of the game, so a run that takes a step too many or too few plays out differently from
+ * there on.
+ * <p>
+ * Usage: TimeScaleCheck [games]
+ */
+public final class TimeScaleCheck {
+
+    private static final int DEFAULT_GAMES = 20;
+    private static final double GAME_SECONDS = 60.0;
+    private static final double MISTAKE_RATE = 0.1;
+    private static final double[] SCALES = {1.0, GameClock.MIN_SCALE, 0.5, 3.0, 4.0, GameClock.MAX_SCALE};
+    private static final String[] FRAME_PATTERNS = {"uneven", "60 Hz", "144 Hz", "hitches"};
+
+    private TimeScaleCheck() {
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        List<LevelData> levels = LevelData.loadAll();
+
+        int runs = 0;
+        int failures = 0;
+        for (int seed = 1; seed <= games; seed++) {
+            long[] expected = playSteps(levels, seed);
+            for (double scale : SCALES) {
+                for (int pattern = 0; pattern < FRAME_PATTERNS.length; pattern++) {
+                    long start = System.nanoTime();
+                    long[] outcome = playFrames(levels, seed, scale, frameTimes(pattern, seed));
+                    runs++;
+                    if (!Arrays.equals(expected, outcome)) {
+                        failures++;
+                        System.out.printf("Game %d differs at %.2fx with %s frames: %s, expected %s%n", seed, scale,
+                                FRAME_PATTERNS[pattern], Arrays.toString(outcome), Arrays.toString(expected));
+                    }
+                    if (seed == 1) {
+                        System.out.printf("%6.2fx, %-7s: %d steps in %.1f ms%n",
+                                scale, FRAME_PATTERNS[pattern], outcome[0], (System.nanoTime() - start) / 1e6);
+                    }
+                }
+            }
+        }
+        System.out.printf("Played %d games in %d runs, %d differed%n", games, runs, failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // The reference run, which takes exactly one step of game time per frame
+    private static long[] playSteps(List<LevelData> levels, int seed) {
+        Game game = new Game(levels);
+        GreedyBot bot = new GreedyBot(new Random(seed), MISTAKE_RATE);
+        game.reset(seed);
+        long steps = Math.round(GAME_SECONDS / GameClock.STEP);
+        for (long i = 0; i < steps && !game.isOver(); i++) {
+            game.step(bot.act(game), GameClock.STEP);
+        }
+        return outcome(game, steps);
+    }
+
+    private static long[] playFrames(List<LevelData> levels, int seed, double scale, DoubleSupplier frameTimes) {
+        // A new game each time, since some counters in the state keep going between games
+        Game game = new Game(levels);
+        GreedyBot bot = new GreedyBot(new Random(seed), MISTAKE_RATE);
+        GameClock clock = new GameClock();
+        clock.setScale(scale);
+        game.reset(seed);
+        // The last frame is cut short, so that the real frame times add up to the game time at this scale
+        double realSecondsLeft = GAME_SECONDS / clock.getScale();
+        while (realSecondsLeft > 0.0) {
+            double frameTime = Math.min(frameTimes.getAsDouble(), realSecondsLeft);
+            realSecondsLeft -= frameTime;
+            int steps = clock.advance(frameTime);
+            for (int i = 0; i < steps && !game.isOver(); i++) {
+                game.step(bot.act(game), GameClock.STEP);
+            }
+        }
+        return outcome(game, clock.getSteps());
+    }
+
+    // Returns the number of steps the clock gave, the frame, score and level of the game, and a hash of its state
+    private static long[] outcome(Game game, long steps) {
+        long[] state = new long[game.stateSize()];
+        game.writeState(state);
+        return new long[] {steps, game.getFrame(), game.getScore(), game.getLevel(), Arrays.hashCode(state)};
+    }
+
+    // Real frame times in seconds, which at the highest scale stay below the most steps the clock gives per frame
+    private static DoubleSupplier frameTimes(int pattern, int seed) {
+        Random random = new Random(-seed);
+        switch (pattern) {
+            case 0:
+                return () -> 0.005 + random.nextDouble() * 0.035;
+            case 1:
+                return () -> 1.0 / 60.0;
+            case 2:
+                return () -> 1.0 / 144.0;
+            default:
+                return () -> random.nextInt(50) == 0 ? 0.1 + random.nextDouble() * 0.15 : 1.0 / 60.0;
+        }
+    }
+}
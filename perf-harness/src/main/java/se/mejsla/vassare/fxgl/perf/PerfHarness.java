@@ -0,0 +1,169 @@
+package se.mejsla.vassare.fxgl.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs every chapter with {@link PerfProbe} for the same number of frames, and prints a table that compares
+ * frame times, allocation rates and entity counts, to show which step of the tutorial added which cost.
+ * The chapters must have been compiled first.
+ * <p>
+ * Usage: PerfHarness [repository directory] [frames] [app arguments...]
+ * <p>
+ * When app arguments are given, each chapter is run twice, first without and then with them, so that for example
+ * --two-players can be compared with one player. Add -Dharness.chapters=10-.* to only run the chapters whose
+ * directory names match, since the earlier chapters do not know the arguments of the later ones.
+ * <p>
+ * Frames are not throttled to 60 fps, so the frame time is the time it takes to update and render a frame.
+ * The chapters run without a display, using Monocle and software rendering, so that the harness can run on a build
+ * server. Add -Dharness.headless=false to show the windows and render with the graphics card instead.
+ */
+public final class PerfHarness {
+
+    private static final int DEFAULT_FRAMES = 1_800;
+    private static final int TAIL_LINES = 20;
+    private static final String ROW = "%-30s %10s %10s %10s %12s %10s %10s%n";
+
+    private PerfHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = Paths.get(args.length > 0 ? args[0] : ".").toAbsolutePath().normalize();
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FRAMES;
+        List<String> appArgs = Arrays.asList(args).subList(Math.min(2, args.length), args.length);
+        String chapterPattern = System.getProperty("harness.chapters", "\\d\\d-.*");
+
+        List<Path> chapters;
+        try (Stream<Path> dirs = Files.list(root)) {
+            chapters = dirs.filter(dir -> dir.getFileName().toString().matches(chapterPattern))
+                    .filter(dir -> Files.isDirectory(dir.resolve("target/classes")))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        if (chapters.isEmpty()) {
+            System.err.println("No compiled chapters found in " + root + ", run mvn package first");
+            System.exit(1);
+        }
+
+        System.out.printf(ROW, "Chapter", "Mean ms", "P99 ms", "Max ms", "Alloc MB/s", "Entities", "Max ent.");
+        for (Path chapter : chapters) {
+            print(chapter.getFileName().toString(), run(chapter, frames, List.of()));
+            if (!appArgs.isEmpty()) {
+                print(chapter.getFileName() + " " + String.join(" ", appArgs), run(chapter, frames, appArgs));
+            }
+        }
+    }
+
+    private static void print(String name, String[] result) {
+        if (result == null) {
+            System.out.printf("%-30s %10s%n", name, "failed");
+        } else {
+            System.out.printf(ROW, name, result[2], result[3], result[4], result[5], result[6], result[7]);
+        }
+    }
+
+    // Returns the fields of the result line, or null if the chapter failed
+    private static String[] run(Path chapter, int frames, List<String> appArgs)
+            throws IOException, InterruptedException {
+        String classPath = chapter.resolve("target/classes") + File.pathSeparator
+                + System.getProperty("java.class.path");
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(classPath);
+        // Let frames run as fast as they can, instead of waiting for the next 60 Hz pulse
+        command.add("-Djavafx.animation.fullspeed=true");
+        command.add("-Dprism.vsync=false");
+        if (Boolean.parseBoolean(System.getProperty("harness.headless", "true"))) {
+            command.add("-Dglass.platform=Monocle");
+            command.add("-Dmonocle.platform=Headless");
+            command.add("-Dprism.order=sw");
+        }
+        command.add(PerfProbe.class.getName());
+        command.add(Integer.toString(frames));
+        command.addAll(appArgs);
+
+        Process process = new ProcessBuilder(command)
+                .directory(chapter.toFile())
+                .redirectErrorStream(true)
+                .start();
+        // The output is read on a thread of its own, so that a chapter that hangs cannot keep the harness waiting
+        Output output = new Output(process);
+        Thread reader = new Thread(output, chapter.getFileName() + "-output");
+        reader.setDaemon(true);
+        reader.start();
+
+        // The probe gives up by itself when the frames take too long, this is for a JVM that never gets that far
+        long timeoutSeconds = frames / 10 + 180;
+        if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+            System.err.println(chapter.getFileName() + " timed out after " + timeoutSeconds + " s");
+            process.destroyForcibly().waitFor();
+        }
+        reader.join(TimeUnit.SECONDS.toMillis(10));
+
+        String[] result = output.getResult();
+        if (result == null) {
+            System.err.println(chapter.getFileName() + " failed, last output:");
+            output.getTail().forEach(System.err::println);
+        }
+        return result;
+    }
+
+    // Keeps the result line and the last lines of the output of a chapter
+    private static final class Output implements Runnable {
+
+        private final Process process;
+        private final Deque<String> tail = new ArrayDeque<>();
+        private String[] result;
+
+        Output(Process process) {
+            this.process = process;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    add(line);
+                }
+            } catch (IOException e) {
+                // The process was destroyed while its output was being read
+                add(e.toString());
+            }
+        }
+
+        private synchronized void add(String line) {
+            if (line.startsWith(PerfProbe.RESULT_PREFIX)) {
+                result = line.split(" ");
+            }
+            tail.addLast(line);
+            if (tail.size() > TAIL_LINES) {
+                tail.removeFirst();
+            }
+        }
+
+        synchronized String[] getResult() {
+            return result;
+        }
+
+        synchronized List<String> getTail() {
+            return new ArrayList<>(tail);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package se.mejsla.vassare.fxgl.perf;
+
+import com.almasb.fxgl.dsl.FXGL;
+import com.almasb.fxgl.input.InputModifier;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.input.KeyCode;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the MazelaManApp that comes first on the class path for a number of frames, with scripted input,
+ * and prints one line of measurements for {@link PerfHarness} to read. Each chapter runs in its own JVM,
+ * since all chapters use the same class names.
+ * <p>
+ * Usage: PerfProbe frames [app arguments...]
+ */
+public final class PerfProbe {
+
+    static final String RESULT_PREFIX = "PERF-RESULT";
+
+    private static final String APP_CLASS = "se.mejsla.vassare.fxgl.mazelaman.MazelaManApp";
+    private static final int WARMUP_FRAMES = 120;
+    // Hold each direction for one second at 60 fps, going around in circles
+    private static final KeyCode[] SCRIPT = {KeyCode.D, KeyCode.S, KeyCode.A, KeyCode.W};
+    private static final int FRAMES_PER_KEY = 60;
+
+    private final int frames;
+    private final long[] frameNanos;
+    private final long[] entityCounts;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private int frame = -WARMUP_FRAMES;
+    private long lastNanos;
+    private long startAllocated;
+    private long startNanos;
+    private long allocatedBytes;
+    private long elapsedNanos;
+    private KeyCode pressed;
+
+    private PerfProbe(int frames) {
+        this.frames = frames;
+        this.frameNanos = new long[frames];
+        this.entityCounts = new long[frames];
+    }
+
+    public static void main(String[] args) throws Exception {
+        int frames = Integer.parseInt(args[0]);
+        String[] appArgs = Arrays.copyOfRange(args, 1, args.length);
+        Thread app = new Thread(() -> {
+            try {
+                Class.forName(APP_CLASS).getMethod("main", String[].class).invoke(null, (Object) appArgs);
+            } catch (ReflectiveOperationException e) {
+                e.printStackTrace();
+                System.exit(2);
+            }
+        }, "app");
+        app.setDaemon(true);
+        app.start();
+
+        waitForEngine();
+        PerfProbe probe = new PerfProbe(frames);
+        Platform.runLater(probe::start);
+        if (!probe.done.await(frames / 10 + 60, TimeUnit.SECONDS)) {
+            System.err.println("Timed out after " + probe.frame + " frames");
+            System.exit(3);
+        }
+        System.out.println(probe.result());
+        System.exit(0);
+    }
+
+    private static void waitForEngine() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            try {
+                FXGL.getGameWorld();
+                return;
+            } catch (RuntimeException e) {
+                // The engine has not been initialized yet
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("The game did not start");
+    }
+
+    private void start() {
+        if (FXGL.getSettings().isMainMenuEnabled()) {
+            FXGL.getGameController().startNewGame();
+        }
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (!sample()) {
+                    stop();
+                    done.countDown();
+                }
+            }
+        }.start();
+    }
+
+    // Called once per pulse on the FX thread, returns false when enough frames have been sampled
+    private boolean sample() {
+        long now = System.nanoTime();
+        long allocated = allocatedBytes();
+        if (frame == 0) {
+            startNanos = now;
+            startAllocated = allocated;
+        } else if (frame > 0) {
+            frameNanos[frame - 1] = now - lastNanos;
+            entityCounts[frame - 1] = FXGL.getGameWorld().getEntities().size();
+        }
+        lastNanos = now;
+
+        if (frame == frames) {
+            elapsedNanos = now - startNanos;
+            allocatedBytes = allocated - startAllocated;
+            if (pressed != null) {
+                FXGL.getInput().mockKeyRelease(pressed, InputModifier.NONE);
+            }
+            return false;
+        }
+
+        KeyCode key = SCRIPT[Math.floorMod(frame, SCRIPT.length * FRAMES_PER_KEY) / FRAMES_PER_KEY];
+        if (key != pressed) {
+            if (pressed != null) {
+                FXGL.getInput().mockKeyRelease(pressed, InputModifier.NONE);
+            }
+            FXGL.getInput().mockKeyPress(key, InputModifier.NONE);
+            pressed = key;
+        }
+        frame++;
+        return true;
+    }
+
+    // Allocations on the FX thread, which is where the game loop runs
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private String result() {
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        double meanMillis = Arrays.stream(frameNanos).average().orElse(0.0) / 1_000_000.0;
+        double p99Millis = sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1_000_000.0;
+        double maxMillis = sorted[sorted.length - 1] / 1_000_000.0;
+        double allocationRate = allocatedBytes / (1024.0 * 1024.0) / (elapsedNanos / 1_000_000_000.0);
+        double meanEntities = Arrays.stream(entityCounts).average().orElse(0.0);
+        long maxEntities = Arrays.stream(entityCounts).max().orElse(0);
+        return String.format(Locale.ROOT, "%s %d %.3f %.3f %.3f %.2f %.1f %d", RESULT_PREFIX,
+                frames, meanMillis, p99Millis, maxMillis, allocationRate, meanEntities, maxEntities);
+    }
+}